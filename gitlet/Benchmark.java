@@ -0,0 +1,416 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/** Timings of the costs that the design notes make claims about, run by
+ *  hand as
+ *
+ *      java gitlet.Benchmark TEST [ARGUMENT]
+ *
+ *  Each TEST prints a small table on the standard output.  Times are the
+ *  best of REPEATS runs, after as many to warm up the JIT.  These are
+ *  measurements, not checks: nothing here fails.
+ *  @author Ashvin Dhawan
+ */
+class Benchmark {
+
+    /** Number of timed runs of each measurement. */
+    static final int REPEATS = 3;
+    /** Number of times a measurement too short to time alone is run
+     *  within one timing. */
+    static final int BATCH = 10000;
+    /** Number of files in the tree the scan test makes by default. */
+    static final int SCAN_FILES = 100000;
+
+    /** Runs the test named by ARGS[0] with the rest of ARGS. */
+    public static void main(String... args) throws IOException {
+        if (args.length == 0) {
+            usage();
+            return;
+        }
+        switch (args[0]) {
+        case "codecs":
+            codecs(new File(args.length > 1 ? args[1] : "."));
+            break;
+        case "commit-id":
+            commitIds();
+            break;
+        case "scan":
+            scan(new File(args.length > 1 ? args[1] : "scan-tree"),
+                 args.length > 2 ? Integer.parseInt(args[2]) : SCAN_FILES);
+            break;
+        case "merge-base":
+            mergeBases();
+            break;
+        case "encoding":
+            encodings();
+            break;
+        default:
+            usage();
+        }
+    }
+
+    /** Prints the tests there are. */
+    private static void usage() {
+        System.out.println("usage: java gitlet.Benchmark TEST [ARGUMENT]");
+        System.out.println("  codecs [DIR]   bytes stored and read speed of "
+                           + "each codec on the files under DIR");
+        System.out.println("  commit-id      time to compute the id of a "
+                           + "commit of 1k and 100k files");
+        System.out.println("  scan [DIR [N]] time to list, hash and stat "
+                           + "the files under DIR, made with N files if");
+        System.out.println("                 missing; run with "
+                           + "-Dgitlet.threads=K for each K to compare");
+        System.out.println("  merge-base     time to find merge bases in "
+                           + "histories with many merges");
+        System.out.println("  encoding       size and speed of the binary "
+                           + "encodings against Java serialization");
+    }
+
+    /** Returns the best of REPEATS timings of BODY in seconds, after
+     *  REPEATS runs that are not timed. */
+    static double time(Body body) throws IOException {
+        for (int k = 0; k < REPEATS; k += 1) {
+            body.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int k = 0; k < REPEATS; k += 1) {
+            long start = System.nanoTime();
+            body.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1e9;
+    }
+
+    /** Code being timed. */
+    interface Body {
+        /** Runs the code once. */
+        void run() throws IOException;
+    }
+
+    /** Prints, for each codec, the bytes its objects would take on disk
+     *  for the plain files under DIR (codec byte included), and the
+     *  rate in MB/s at which they are decompressed. */
+    static void codecs(File dir) throws IOException {
+        List<byte[]> files = new ArrayList<byte[]>();
+        long raw = 0;
+        for (String name : WorkTree.filesIn(dir)) {
+            byte[] contents = Utils.readContents(new File(dir, name));
+            files.add(contents);
+            raw += contents.length;
+        }
+        System.out.printf("%d files, %d bytes%n", files.size(), raw);
+        System.out.printf("%-14s %12s %8s %10s%n",
+                          "codec", "stored", "ratio", "read MB/s");
+        for (Codec codec : Codec.ALL) {
+            List<byte[]> stored = new ArrayList<byte[]>();
+            long bytes = 0;
+            for (byte[] contents : files) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try (OutputStream compressed = codec.compress(out)) {
+                    compressed.write(contents);
+                }
+                stored.add(out.toByteArray());
+                bytes += out.size() + 1;
+            }
+            double seconds = time(() -> {
+                byte[] buffer = new byte[Utils.BUFFER_SIZE];
+                for (byte[] object : stored) {
+                    try (InputStream in = codec.decompress(
+                             new ByteArrayInputStream(object))) {
+                        while (in.read(buffer) >= 0) {
+                            continue;
+                        }
+                    }
+                }
+            });
+            System.out.printf("%-14s %12d %8.3f %10.1f%n", codec.name(),
+                              bytes, (double) bytes / raw,
+                              raw / 1e6 / seconds);
+        }
+    }
+
+    /** Returns a snapshot of N files spread over directories of 100
+     *  files each, mapped to made-up blob ids. */
+    static HashMap<String, String> snapshot(int n) {
+        HashMap<String, String> result = new HashMap<String, String>();
+        for (int i = 0; i < n; i += 1) {
+            result.put("d" + (i / 100) + "/f" + i + ".txt",
+                       Utils.sha1("blob " + i));
+        }
+        return result;
+    }
+
+    /** Prints the microseconds taken to compute a commit id for
+     *  snapshots of 1k and 100k files: as it was once done, by hashing
+     *  the serialized snapshot with the header, and as Commit.sha() now
+     *  does, by hashing the header alone, both for a new commit and for
+     *  one whose id is already cached. */
+    static void commitIds() throws IOException {
+        System.out.printf("%8s %14s %14s %14s%n", "files",
+                          "serialized us", "header us", "cached us");
+        for (int n : new int[] { 1000, 100000 }) {
+            HashMap<String, String> files = snapshot(n);
+            ArrayList<String> parents = new ArrayList<String>();
+            parents.add(Utils.sha1("parent"));
+            Date date = new Date(0);
+            String tree = Utils.sha1("tree");
+            double serialized = time(() -> {
+                Utils.sha1((Object) Utils.serialize(files), "message",
+                           parents.toString(), date.toString());
+            });
+            double header = time(() -> {
+                for (int k = 0; k < BATCH; k += 1) {
+                    new Commit("message", parents, tree, date, "m").sha();
+                }
+            }) / BATCH;
+            Commit commit = new Commit("message", parents, tree, date, "m");
+            double cached = time(() -> {
+                for (int k = 0; k < BATCH; k += 1) {
+                    commit.sha();
+                }
+            }) / BATCH;
+            System.out.printf("%8d %14.1f %14.1f %14.3f%n", n,
+                              serialized * 1e6, header * 1e6, cached * 1e6);
+        }
+    }
+
+    /** Prints the milliseconds taken, on as many threads as the WorkTree
+     *  pool has, to list the plain files under DIR, to hash them all with
+     *  an empty Index, and to check them all against an Index that holds
+     *  them, which needs only a stat call per file.  If DIR does not
+     *  exist, it is first filled with N files of 1 KiB, 100 to a
+     *  directory. */
+    static void scan(File dir, int n) throws IOException {
+        if (!dir.exists()) {
+            for (int i = 0; i < n; i += 1) {
+                File file = Utils.join(dir, "d" + (i / 100), "f" + i);
+                file.getParentFile().mkdirs();
+                Utils.writeContents(file, ("file " + i + "\n").repeat(200)
+                                    .substring(0, 1024));
+            }
+        }
+        File noIndex = Utils.join(dir, "no-such-index");
+        List<String> names = WorkTree.filesIn(dir);
+        double list = time(() -> WorkTree.filesIn(dir));
+        double hash = time(() -> Index.load(noIndex).ids(dir, names));
+        Index index = Index.load(noIndex);
+        index.ids(dir, names);
+        double stat = time(() -> index.ids(dir, names));
+        System.out.printf("%d files, %d threads: list %.0f ms, hash %.0f ms,"
+                          + " stat %.0f ms%n", names.size(),
+                          WorkTree.pool().getParallelism(), list * 1e3,
+                          hash * 1e3, stat * 1e3);
+    }
+
+    /** Returns a commit graph kept in FILE, which must not exist, holding
+     *  a history of N commits on LANES branches.  Each commit is made on
+     *  a random branch and, one time in MERGEEVERY, merges the head of
+     *  another.  Returns the positions of the heads of the branches in
+     *  HEADS. */
+    static CommitGraph history(File file, int n, int lanes, int mergeEvery,
+                               int[] heads) {
+        CommitGraph graph = CommitGraph.load(file);
+        Random random = new Random(n);
+        String[] ids = new String[lanes];
+        String root = Utils.sha1("commit 0");
+        Arrays.fill(heads, graph.add(root, null, 0));
+        Arrays.fill(ids, root);
+        for (int i = 1; i < n; i += 1) {
+            int lane = random.nextInt(lanes), other = random.nextInt(lanes);
+            ArrayList<String> parents = new ArrayList<String>();
+            parents.add(ids[lane]);
+            if (other != lane && random.nextInt(mergeEvery) == 0) {
+                parents.add(ids[other]);
+            }
+            ids[lane] = Utils.sha1("commit " + i);
+            heads[lane] = graph.add(ids[lane], parents, i);
+        }
+        return graph;
+    }
+
+    /** Returns the commits of GRAPH from which commit K is reachable,
+     *  found by following every parent link. */
+    static BitSet ancestors(CommitGraph graph, int k) {
+        BitSet result = new BitSet();
+        ArrayList<Integer> stack = new ArrayList<Integer>();
+        stack.add(k);
+        while (!stack.isEmpty()) {
+            int c = stack.remove(stack.size() - 1);
+            if (c != CommitGraph.NONE && !result.get(c)) {
+                result.set(c);
+                stack.add(graph.parent(c, 0));
+                stack.add(graph.parent(c, 1));
+            }
+        }
+        return result;
+    }
+
+    /** Prints the microseconds MergeBase.bases takes for every pair of
+     *  branch heads in synthetic histories of 10k and 100k commits with
+     *  a merge in every 5 or 50 commits, next to the time taken just to
+     *  list all the ancestors of both heads, which is what a search
+     *  that does not stop at the merge bases costs. */
+    static void mergeBases() throws IOException {
+        System.out.printf("%8s %6s %6s %12s %12s%n", "commits", "lanes",
+                          "merges", "bases us", "full walk us");
+        File dir = Files.createTempDirectory("gitlet-bench").toFile();
+        for (int n : new int[] { 10000, 100000 }) {
+            for (int mergeEvery : new int[] { 5, 50 }) {
+                int lanes = 8;
+                int[] heads = new int[lanes];
+                File file = new File(dir, n + "-" + mergeEvery);
+                CommitGraph graph = history(file, n, lanes, mergeEvery,
+                                            heads);
+                int pairs = lanes * (lanes - 1) / 2;
+                double bases = time(() -> {
+                    for (int a = 0; a < lanes; a += 1) {
+                        for (int b = a + 1; b < lanes; b += 1) {
+                            MergeBase.bases(graph, heads[a], heads[b]);
+                        }
+                    }
+                }) / pairs;
+                double walk = time(() -> {
+                    for (int a = 0; a < lanes; a += 1) {
+                        for (int b = a + 1; b < lanes; b += 1) {
+                            ancestors(graph, heads[a])
+                                .and(ancestors(graph, heads[b]));
+                        }
+                    }
+                }) / pairs;
+                System.out.printf("%8d %6d %6s %12.1f %12.1f%n", n, lanes,
+                                  "1/" + mergeEvery, bases * 1e6,
+                                  walk * 1e6);
+            }
+        }
+        deleteAll(dir);
+    }
+
+    /** The fields of a Commit, as Java serialization would store them. */
+    private static class SerializedCommit implements Serializable {
+        /** Ids of the parents. */
+        private ArrayList<String> _parent;
+        /** Commit message. */
+        private String _message;
+        /** Time of the commit. */
+        private Date _date;
+        /** Branch of the commit. */
+        private String _branch;
+        /** Id of the root tree. */
+        private String _tree;
+    }
+
+    /** Returns the object serialized in BYTES. */
+    static Object deserialize(byte[] bytes) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(
+                 new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        } catch (ClassNotFoundException excp) {
+            throw new IOException(excp.getMessage());
+        }
+    }
+
+    /** Prints the size of the encoding ENCODE makes, and the microseconds
+     *  it takes to make it and for DECODE to rebuild the object from it,
+     *  next to the same for the Java serialization of what SERIALIZED
+     *  supplies, for the object called KIND. */
+    static void compare(String kind, Supplier<byte[]> encode,
+                        Function<byte[], Object> decode,
+                        Supplier<Serializable> serialized)
+        throws IOException {
+        byte[] encoding = encode.get();
+        Serializable object = serialized.get();
+        byte[] serialization = Utils.serialize(object);
+        double encodeTime = time(() -> {
+            for (int k = 0; k < BATCH / 100; k += 1) {
+                encode.get();
+            }
+        }) / (BATCH / 100);
+        double decodeTime = time(() -> {
+            for (int k = 0; k < BATCH / 100; k += 1) {
+                decode.apply(encoding);
+            }
+        }) / (BATCH / 100);
+        double serializeTime = time(() -> {
+            for (int k = 0; k < BATCH / 100; k += 1) {
+                Utils.serialize(object);
+            }
+        }) / (BATCH / 100);
+        double deserializeTime = time(() -> {
+            for (int k = 0; k < BATCH / 100; k += 1) {
+                deserialize(serialization);
+            }
+        }) / (BATCH / 100);
+        System.out.printf("%-16s %8d %8.1f %8.1f   %8d %8.1f %8.1f%n", kind,
+                          encoding.length, encodeTime * 1e6,
+                          decodeTime * 1e6, serialization.length,
+                          serializeTime * 1e6, deserializeTime * 1e6);
+    }
+
+    /** Prints the sizes and the encoding and decoding times of a commit,
+     *  a tree of 1000 files, a stage map of 1000 files and a branch name,
+     *  in the binary Encoding and in Java serialization. */
+    static void encodings() throws IOException {
+        System.out.printf("%-16s %8s %8s %8s   %8s %8s %8s%n", "",
+                          "bytes", "enc us", "dec us", "java", "ser us",
+                          "deser us");
+        ArrayList<String> parents = new ArrayList<String>();
+        parents.add(Utils.sha1("parent"));
+        Commit commit = new Commit("Fix the thing that was broken",
+                                   parents, Utils.sha1("tree"),
+                                   new Date(), "master");
+        compare("commit", commit::encode, Commit::decode, () -> {
+            SerializedCommit result = new SerializedCommit();
+            result._parent = parents;
+            result._message = commit.message();
+            result._date = commit.date();
+            result._branch = "master";
+            result._tree = commit.tree();
+            return result;
+        });
+        TreeMap<String, String> files = new TreeMap<String, String>();
+        for (int i = 0; i < 1000; i += 1) {
+            files.put("file" + i + ".txt", Utils.sha1("blob " + i));
+        }
+        File dir = Files.createTempDirectory("gitlet-bench").toFile();
+        ObjectStore store = new ObjectStore(dir);
+        store.create();
+        Tree tree = store.get(Tree.write(store, files), Tree::decode);
+        compare("tree (1000)", tree::encode, Tree::decode, () -> files);
+        HashMap<String, String> stage = new HashMap<String, String>(files);
+        compare("stage map (1000)", () -> Encoding.encodeMap(stage),
+                Encoding::decodeMap, () -> stage);
+        compare("branch", () -> Encoding.encodeString("master"),
+                Encoding::decodeString, () -> "master");
+        deleteAll(dir);
+    }
+
+    /** Deletes FILE and, if it is a directory, everything under it. */
+    static void deleteAll(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteAll(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -1,41 +1,67 @@
 package gitlet;
 
 import java.io.File;
-import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 
-/** BLob class that stores a blobs _NAME and serialized _CONTENTS.
+/** BLob class for a single version of a file.  A blob is identified by
+ *  the SHA-1 of its contents, which live either in a working file or in
+ *  the object store, and are only read into memory when asked for.
  * @author Ashvin Dhawan */
-public class Blob implements Serializable {
+public class Blob {
 
-    /** FileName of Blob object. */
+    /** FileName of Blob object, or null for a blob from the store. */
     private String _name;
-    /** Serialized contents of blob object. */
+    /** SHA-1 of the contents of this blob. */
+    private String _id;
+    /** Working file holding the contents of this blob, if any. */
+    private File _file;
+    /** Object store holding the contents of this blob, if any. */
+    private ObjectStore _store;
+    /** Contents of blob object, once they have been read. */
     private byte[] _contents;
 
-    /** String version of file contents. */
-    private String _contentsAsString;
-
-    /** constructor for blob class, takes in NAME for fileName. */
-    public Blob(String name) {
+    /** A blob for working file NAME, already known to have id ID. */
+    public Blob(String name, String id) {
         _name = name;
-        String blobPath = System.getProperty("user.dir") + "/" + name;
-        File test = new File(blobPath);
-        _contents = Utils.readContents(test);
-        _contentsAsString = Utils.readContentsAsString(test);
+        _file = new File(System.getProperty("user.dir") + "/" + name);
+        _id = id;
+    }
+
+    /** A blob with id ID whose contents are kept in STORE. */
+    Blob(String id, ObjectStore store) {
+        _id = id;
+        _store = store;
     }
 
-    /** Accessor method, returns NAME. */
+    /** Accessor method, returns NAME, or null for a blob that was read
+     *  back from the object store. */
     public String name() {
         return _name;
     }
 
-    /** Accessor method, returns CONTENTS. */
+    /** Accessor method, returns the working FILE holding this blob's
+     *  contents, or null for a blob from the object store. */
+    public File file() {
+        return _file;
+    }
+
+    /** Accessor method, returns CONTENTS, reading them on first use. */
     public byte[] conts() {
+        if (_contents == null && _file != null) {
+            _contents = Utils.readContents(_file);
+        } else if (_contents == null) {
+            _contents = _store.read(_id);
+        }
         return _contents;
     }
 
     /** returns contents of the blob as a string. */
     public String caS() {
-        return _contentsAsString;
+        return new String(conts(), StandardCharsets.UTF_8);
+    }
+
+    /** Returns the id of this blob, the SHA-1 of its contents. */
+    public String sha() {
+        return _id;
     }
 }
@@ -0,0 +1,63 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/** A compression scheme for objects in the object store.  Every stored
+ *  object starts with the id() byte of the codec that wrote it, so codecs
+ *  may be mixed freely within one repository.
+ *  @author Ashvin Dhawan
+ */
+interface Codec {
+
+    /** Name of the system property that selects the codec used for new
+     *  objects, e.g. java -Dgitlet.codec=deflate-fast gitlet.Main .... */
+    String PROPERTY = "gitlet.codec";
+
+    /** Codec that stores objects as they are. */
+    Codec IDENTITY = new IdentityCodec();
+    /** Codec that favors small objects over speed. */
+    Codec DEFLATE = new DeflateCodec(1, "deflate", 6);
+    /** Codec that favors speed over small objects. */
+    Codec DEFLATE_FAST = new DeflateCodec(2, "deflate-fast", 1);
+
+    /** All known codecs, indexed by id. */
+    Codec[] ALL = { IDENTITY, DEFLATE, DEFLATE_FAST };
+
+    /** Returns the byte that marks objects written by this codec. */
+    int id();
+
+    /** Returns the name by which this codec is selected. */
+    String name();
+
+    /** Returns a stream that compresses everything written to it into
+     *  OUT.  Closing the result closes OUT. */
+    OutputStream compress(OutputStream out) throws IOException;
+
+    /** Returns a stream that lazily decompresses the contents of IN.
+     *  Closing the result closes IN. */
+    InputStream decompress(InputStream in) throws IOException;
+
+    /** Returns the codec with id ID.  Throws IllegalArgumentException if
+     *  there is none. */
+    static Codec forId(int id) {
+        if (id < 0 || id >= ALL.length) {
+            throw new IllegalArgumentException("unknown object codec " + id);
+        }
+        return ALL[id];
+    }
+
+    /** Returns the codec chosen by the PROPERTY system property, or DEFLATE
+     *  if it is not set.  Throws IllegalArgumentException for an unknown
+     *  name. */
+    static Codec configured() {
+        String name = System.getProperty(PROPERTY, DEFLATE.name());
+        for (Codec codec : ALL) {
+            if (codec.name().equals(name)) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("unknown object codec " + name);
+    }
+}
@@ -1,20 +1,26 @@
 package gitlet;
 
-import java.io.Serializable;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
-import java.text.SimpleDateFormat;
-import java.util.TimeZone;
 
 /** Commit class that saves the information of a
  * single commit and its relation to other commits.
  * @author Ashvin Dhawan
  * */
-public class Commit implements Serializable {
+public class Commit {
 
-    /** list of filename to blob mappings of a Commit.*/
-    private HashMap<String, Blob> _blobList;
+    /** Time zone in which commit dates are shown. */
+    static final ZoneOffset ZONE = ZoneOffset.ofHours(-8);
+    /** Format in which commit dates are shown. */
+    private static final DateTimeFormatter DATE_FORMAT =
+        DateTimeFormatter.ofPattern("EEE MMM dd HH:mm:ss yyyy Z")
+        .withZone(ZONE);
+
+    /** Type tag hashed before the header of every commit, so that no
+     *  blob or tree shares a commit's id. */
+    static final String TAG = "commit\0";
 
     /** sha1 of parent commit. */
     private ArrayList<String> _parent;
@@ -28,22 +34,23 @@ public class Commit implements Serializable {
     /** branch associated with this commit.*/
     private String _branch;
 
+    /** Id of the root Tree of this commit's snapshot. */
+    private String _tree;
+
+    /** Cached id of this commit, computed on first use of sha(). */
+    private String _sha;
+
     /** Constructor for Commit class, with MESSAGE,
-     * PARENT, BLOBLIST, DATE, BRANCH all being assigned. */
+     * PARENT, TREE, DATE, BRANCH all being assigned. */
     public Commit(String message, ArrayList<String> parent,
-                  HashMap<String, Blob> blobList, Date date, String branch) {
+                  String tree, Date date, String branch) {
         _message = message;
         _parent = parent;
-        _blobList = blobList;
+        _tree = tree;
         _date = date;
         _branch = branch;
     }
 
-    /** Accessor method, returns Commit's list of BLOBS. */
-    public HashMap<String, Blob> bL() {
-        return _blobList;
-    }
-
     /** Accessor method, returns raw _DATE object. */
     public Date date() {
         return _date;
@@ -51,11 +58,7 @@ public class Commit implements Serializable {
 
     /** Returns DATE TIME of Commit. */
     public String toDate() {
-        SimpleDateFormat sdf =
-                new SimpleDateFormat("EEE MMM dd HH:mm:ss yyyy Z");
-        sdf.setTimeZone(TimeZone.getTimeZone("GMT-8"));
-        String a = sdf.format(date());
-        return a;
+        return DATE_FORMAT.format(_date.toInstant());
     }
 
     /** Accessor method, returns string _PARENT. */
@@ -81,13 +84,64 @@ public class Commit implements Serializable {
         return _parent;
     }
 
-    /** returns sha1 String of commit. */
+    /** Accessor method, returns the id of the root Tree of this commit. */
+    public String tree() {
+        return _tree;
+    }
+
+    /** returns sha1 String of commit.  The id covers only TAG and a short
+     *  canonical header (tree hash, parents, timestamp and message), so
+     *  computing it does not depend on the number of files in the
+     *  snapshot. */
     public String sha() {
-        return Utils.sha1(Utils.serialize(this));
+        if (_sha == null) {
+            StringBuilder header = new StringBuilder();
+            header.append("tree ").append(_tree).append('\n');
+            if (_parent != null) {
+                for (String parent : _parent) {
+                    header.append("parent ").append(parent).append('\n');
+                }
+            }
+            header.append("time ").append(_date.getTime()).append('\n');
+            header.append('\n').append(_message);
+            _sha = Utils.sha1(TAG, header.toString());
+        }
+        return _sha;
     }
 
     /** Accessor method, returns _MESSAGE. */
     public String message() {
         return _message;
     }
+
+    /** Returns the encoding of this commit: its tree, the number of its
+     *  parents and their ids, its time, branch and message. */
+    byte[] encode() {
+        Encoding.Writer out = new Encoding.Writer(Encoding.COMMIT);
+        out.id(_tree).count(_parent == null ? 0 : _parent.size());
+        if (_parent != null) {
+            for (String parent : _parent) {
+                out.id(parent);
+            }
+        }
+        return out.time(_date.getTime()).string(_branch).string(_message)
+            .toByteArray();
+    }
+
+    /** Returns the commit encoded in BYTES. */
+    static Commit decode(byte[] bytes) {
+        Encoding.Reader in = new Encoding.Reader(bytes, Encoding.COMMIT);
+        String tree = in.id();
+        int n = in.size();
+        ArrayList<String> parents = null;
+        if (n > 0) {
+            parents = new ArrayList<String>(n);
+            for (int i = 0; i < n; i += 1) {
+                parents.add(in.id());
+            }
+        }
+        Date date = new Date(in.time());
+        String branch = in.string();
+        return new Commit(in.string(), parents, tree, date, branch);
+    }
 }
@@ -0,0 +1,325 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** The shape of the commit history, kept apart from the commits so that
+ *  ancestry can be queried without reading any commit.  Every commit has
+ *  a fixed-size record holding its id, the positions of its parents'
+ *  records, its generation number (one more than the largest generation
+ *  of its parents; 1 for the initial commit) and its time.
+ *
+ *  The file .gitlet/commit-graph holds the header "GCGR", a version, the
+ *  number of records and the number of leading records that are sorted by
+ *  id, followed by the records.  It is memory-mapped.  A lookup is a
+ *  binary search over the sorted records and a scan of the short unsorted
+ *  tail of records appended since, which is sorted into the rest once it
+ *  grows past a fraction of the whole.
+ *  @author Ashvin Dhawan
+ */
+class CommitGraph {
+
+    /** Magic number starting every commit-graph file. */
+    static final int MAGIC = 0x47434752;
+    /** Version of the commit-graph format written here. */
+    static final int VERSION = 1;
+    /** Length of the header in bytes. */
+    static final int HEADER_BYTES = 16;
+    /** Length of one record: id, two parents, generation and time. */
+    static final int RECORD_BYTES = Utils.ID_BYTES + 20;
+    /** Stands for a missing commit or parent. */
+    static final int NONE = -1;
+    /** Smallest unsorted tail that causes the records to be sorted. */
+    static final int MIN_UNSORTED = 64;
+
+    /** The file holding this graph. */
+    private final File _file;
+    /** Mapped contents of _file, or null if it does not exist. */
+    private ByteBuffer _map;
+    /** Number of records in _map. */
+    private int _mapped;
+    /** Number of leading records in _map that are sorted by id. */
+    private int _sorted;
+    /** Records added since _file was mapped. */
+    private ByteBuffer _pending = ByteBuffer.allocate(0);
+    /** Map from the ids of the records in _pending to their positions. */
+    private HashMap<String, Integer> _pendingIds =
+        new HashMap<String, Integer>();
+    /** True iff all records are to be sorted on the next save(). */
+    private boolean _resort;
+
+    /** The graph kept in FILE, which need not exist yet. */
+    private CommitGraph(File file) {
+        _file = file;
+    }
+
+    /** Returns the graph kept in FILE, which is empty if FILE does not
+     *  exist.  Throws IllegalArgumentException if FILE is damaged. */
+    static CommitGraph load(File file) {
+        CommitGraph result = new CommitGraph(file);
+        if (file.isFile()) {
+            result.map();
+        }
+        return result;
+    }
+
+    /** Maps _file into memory and reads its header. */
+    private void map() {
+        try (FileChannel channel = FileChannel.open(_file.toPath())) {
+            _map = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (_map.limit() < HEADER_BYTES || _map.getInt(0) != MAGIC
+                || _map.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("bad commit graph");
+        }
+        _mapped = _map.getInt(8);
+        _sorted = _map.getInt(12);
+        _pending = ByteBuffer.allocate(0);
+        _pendingIds.clear();
+    }
+
+    /** Returns the number of commits in this graph. */
+    int size() {
+        return _mapped + _pending.position() / RECORD_BYTES;
+    }
+
+    /** Returns the buffer holding record K. */
+    private ByteBuffer buffer(int k) {
+        return k < _mapped ? _map : _pending;
+    }
+
+    /** Returns the position of record K in buffer(K). */
+    private int offset(int k) {
+        return k < _mapped ? HEADER_BYTES + k * RECORD_BYTES
+            : (k - _mapped) * RECORD_BYTES;
+    }
+
+    /** Returns the id of commit K. */
+    String id(int k) {
+        byte[] id = new byte[Utils.ID_BYTES];
+        buffer(k).get(offset(k), id);
+        return Utils.toHex(id);
+    }
+
+    /** Returns parent WHICH (0 or 1) of commit K, or NONE. */
+    int parent(int k, int which) {
+        return buffer(k).getInt(offset(k) + Utils.ID_BYTES + 4 * which);
+    }
+
+    /** Returns the generation number of commit K. */
+    int generation(int k) {
+        return buffer(k).getInt(offset(k) + Utils.ID_BYTES + 8);
+    }
+
+    /** Returns the time of commit K in milliseconds. */
+    long time(int k) {
+        return buffer(k).getLong(offset(k) + Utils.ID_BYTES + 12);
+    }
+
+    /** Returns the sign of the comparison of the first PREFIX.length()
+     *  hexadecimal digits of the id of record K with PREFIX. */
+    private int compare(int k, String prefix) {
+        ByteBuffer buffer = buffer(k);
+        int start = offset(k);
+        for (int i = 0; i < prefix.length(); i += 1) {
+            int b = buffer.get(start + i / 2) & 0xff;
+            int digit = i % 2 == 0 ? b >> 4 : b & 0xf;
+            int c = Integer.compare(digit,
+                    Character.digit(prefix.charAt(i), 16));
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Returns the first of the sorted records whose id is not below
+     *  PREFIX in its first PREFIX.length() digits. */
+    private int lowerBound(String prefix) {
+        int lo = 0, hi = _sorted;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(mid, prefix) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Returns the position of commit ID, or NONE if it is not in this
+     *  graph. */
+    int find(String id) {
+        if (id == null || id.length() != Utils.UID_LENGTH) {
+            return NONE;
+        }
+        Integer pending = _pendingIds.get(id);
+        if (pending != null) {
+            return pending;
+        }
+        int k = lowerBound(id);
+        if (k < _sorted && compare(k, id) == 0) {
+            return k;
+        }
+        for (k = _sorted; k < _mapped; k += 1) {
+            if (compare(k, id) == 0) {
+                return k;
+            }
+        }
+        return NONE;
+    }
+
+    /** Returns the positions of at most LIMIT commits whose ids begin with
+     *  the hexadecimal digits PREFIX.  Sorted records are found by binary
+     *  search; only the short unsorted tail is scanned. */
+    List<Integer> findAll(String prefix, int limit) {
+        ArrayList<Integer> result = new ArrayList<Integer>();
+        if (prefix.length() > Utils.UID_LENGTH) {
+            return result;
+        }
+        for (int k = lowerBound(prefix); k < _sorted
+                 && result.size() < limit && compare(k, prefix) == 0;
+             k += 1) {
+            result.add(k);
+        }
+        for (int k = _sorted; k < _mapped && result.size() < limit;
+             k += 1) {
+            if (compare(k, prefix) == 0) {
+                result.add(k);
+            }
+        }
+        for (Map.Entry<String, Integer> entry : _pendingIds.entrySet()) {
+            if (result.size() < limit && entry.getKey().startsWith(prefix)) {
+                result.add(entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /** Adds commit ID, with parents PARENTS (which may be null) and time
+     *  TIME, unless it is already present.  Its parents must already be in
+     *  this graph.  Returns the position of its record. */
+    int add(String id, List<String> parents, long time) {
+        int existing = find(id);
+        if (existing != NONE) {
+            return existing;
+        }
+        int[] links = { NONE, NONE };
+        int generation = 1;
+        for (int i = 0; parents != null && i < parents.size(); i += 1) {
+            links[i] = find(parents.get(i));
+            if (links[i] == NONE) {
+                throw new IllegalArgumentException("missing parent "
+                        + parents.get(i));
+            }
+            generation = Math.max(generation, generation(links[i]) + 1);
+        }
+        if (_pending.remaining() < RECORD_BYTES) {
+            ByteBuffer grown = ByteBuffer.allocate(
+                    Math.max(2 * _pending.capacity(), 16 * RECORD_BYTES));
+            _pending.flip();
+            grown.put(_pending);
+            _pending = grown;
+        }
+        int k = size();
+        _pending.put(Utils.fromHex(id)).putInt(links[0])
+            .putInt(links[1]).putInt(generation).putLong(time);
+        _pendingIds.put(id, k);
+        return k;
+    }
+
+    /** Causes the next save() to sort all records by id. */
+    void sort() {
+        _resort = true;
+    }
+
+    /** Writes any records added since this graph was loaded to its file.
+     *  They are appended unless the unsorted tail would grow too long, in
+     *  which case the whole file is rewritten in sorted order and the
+     *  positions of the records change. */
+    void save() {
+        int size = size();
+        if (size == _mapped && !_resort) {
+            return;
+        }
+        try {
+            if (_resort || _map == null
+                    || size - _sorted > MIN_UNSORTED + _sorted / 16) {
+                rewrite();
+            } else {
+                append();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _resort = false;
+        map();
+    }
+
+    /** Appends the pending records to the file and then updates the count
+     *  in its header, so that a crash in between loses only the new
+     *  records. */
+    private void append() throws IOException {
+        try (FileChannel out = FileChannel.open(_file.toPath(),
+                StandardOpenOption.WRITE)) {
+            _pending.flip();
+            long position = HEADER_BYTES + (long) _mapped * RECORD_BYTES;
+            while (_pending.hasRemaining()) {
+                position += out.write(_pending, position);
+            }
+            ByteBuffer count = ByteBuffer.allocate(4);
+            count.putInt(size()).flip();
+            out.write(count, 8);
+        }
+    }
+
+    /** Writes all records to a new file sorted by id, renumbering the
+     *  parent links, and moves it into place. */
+    private void rewrite() throws IOException {
+        int size = size();
+        ArrayList<Integer> order = new ArrayList<Integer>(size);
+        ArrayList<String> ids = new ArrayList<String>(size);
+        for (int k = 0; k < size; k += 1) {
+            order.add(k);
+            ids.add(id(k));
+        }
+        order.sort((x, y) -> ids.get(x).compareTo(ids.get(y)));
+        int[] renumber = new int[size];
+        for (int i = 0; i < size; i += 1) {
+            renumber[order.get(i)] = i;
+        }
+        ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES
+                + size * RECORD_BYTES);
+        out.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(size);
+        for (int k : order) {
+            out.put(Utils.fromHex(ids.get(k)));
+            for (int which = 0; which < 2; which += 1) {
+                int p = parent(k, which);
+                out.putInt(p == NONE ? NONE : renumber[p]);
+            }
+            out.putInt(generation(k)).putLong(time(k));
+        }
+        File temp = File.createTempFile("graph", null, _file.getParentFile());
+        try {
+            Files.write(temp.toPath(), out.array());
+            Files.move(temp.toPath(), _file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            temp.delete();
+        }
+    }
+}
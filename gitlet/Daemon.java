@@ -0,0 +1,206 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+/** A long-running server for the repository in the working directory.
+ *  It keeps one Gitlet, with its open packs, commit graph, stat index and
+ *  flattened snapshots, warm between commands, and runs the commands
+ *  sent to it over the Unix-domain socket .gitlet/daemon.sock.  When
+ *  Main finds that socket it forwards its command there instead of
+ *  running it.
+ *
+ *  A request is the number of arguments on a line by itself, followed by
+ *  each argument on a line of its own, in UTF-8; the reply is the output
+ *  of the command, after which the server closes the connection.  Any
+ *  client can speak this, e.g. printf '1\nstatus\n' | nc -U
+ *  .gitlet/daemon.sock.  Commands are run one at a time.  If the stat
+ *  index, commit graph or packs are changed by another process between
+ *  two commands, the warm state is dropped and read again.
+ *  @author Ashvin Dhawan
+ */
+class Daemon {
+
+    /** Name of the socket file in the .gitlet directory. */
+    static final String SOCKET = "daemon.sock";
+
+    /** The repository state kept between commands, or null if it is to
+     *  be read afresh. */
+    private Gitlet _gitlet;
+    /** Stamp of the repository files when the last command finished. */
+    private String _stamp;
+    /** False once a stop request has been received. */
+    private boolean _running = true;
+
+    /** Returns the path of the socket of the repository in the working
+     *  directory. */
+    static Path socket() {
+        return Utils.join(System.getProperty("user.dir"), ".gitlet",
+                SOCKET).toPath();
+    }
+
+    /** Runs the daemon command with operands ARGS: with none, serves the
+     *  repository in the working directory until stopped; with "stop",
+     *  stops the daemon serving it. */
+    static void main(String... args) throws IOException {
+        if (!new File(".gitlet").exists()) {
+            throw new GitletException(
+                    "Not in an initialized Gitlet directory.");
+        } else if (args.length == 1 && args[0].equals("stop")) {
+            if (!forward("daemon", "stop")) {
+                throw new GitletException("No Gitlet daemon is running.");
+            }
+        } else if (args.length != 0) {
+            throw new GitletException("Incorrect operands.");
+        } else if (forward()) {
+            throw new GitletException("A Gitlet daemon is already running.");
+        } else {
+            new Daemon().serve();
+        }
+    }
+
+    /** Sends the command ARGS to the daemon serving the repository in the
+     *  working directory and copies its reply to the standard output.
+     *  With no ARGS, only checks that the daemon answers.  Returns false,
+     *  having done nothing, if no daemon is listening or ARGS cannot be
+     *  sent. */
+    static boolean forward(String... args) {
+        Path socket = socket();
+        if (!Files.exists(socket)) {
+            return false;
+        }
+        for (String arg : args) {
+            if (arg.indexOf('\n') >= 0) {
+                return false;
+            }
+        }
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+        } catch (IOException excp) {
+            return false;
+        }
+        try (channel) {
+            if (args.length > 0) {
+                Writer out = Channels.newWriter(channel,
+                        StandardCharsets.UTF_8);
+                out.write(args.length + "\n");
+                for (String arg : args) {
+                    out.write(arg + "\n");
+                }
+                out.flush();
+                channel.shutdownOutput();
+                Channels.newInputStream(channel).transferTo(System.out);
+                System.out.flush();
+            }
+        } catch (IOException excp) {
+            System.out.println("Lost connection to the Gitlet daemon.");
+        }
+        return true;
+    }
+
+    /** Accepts and runs commands until a stop request arrives. */
+    private void serve() throws IOException {
+        Path socket = socket();
+        Files.deleteIfExists(socket);
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            System.out.println("Gitlet daemon listening on " + socket);
+            while (_running) {
+                try (SocketChannel client = server.accept()) {
+                    handle(client);
+                } catch (IOException excp) {
+                    continue;
+                }
+            }
+        } finally {
+            Files.deleteIfExists(socket);
+        }
+    }
+
+    /** Reads one request from CLIENT, runs it with the standard output
+     *  sent to CLIENT, and restores the standard output. */
+    private void handle(SocketChannel client) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+                Channels.newInputStream(client), StandardCharsets.UTF_8));
+        String count = in.readLine();
+        if (count == null) {
+            return;
+        }
+        ArrayList<String> args = new ArrayList<String>();
+        try {
+            for (int i = Integer.parseInt(count.trim()); i > 0; i -= 1) {
+                String arg = in.readLine();
+                if (arg == null) {
+                    return;
+                }
+                args.add(arg);
+            }
+        } catch (NumberFormatException excp) {
+            return;
+        }
+        OutputStream raw = Channels.newOutputStream(client);
+        PrintStream out = new PrintStream(new BufferedOutputStream(raw),
+                false, StandardCharsets.UTF_8);
+        PrintStream stdout = System.out;
+        System.setOut(out);
+        try {
+            run(args.toArray(new String[0]));
+        } finally {
+            out.flush();
+            System.setOut(stdout);
+        }
+    }
+
+    /** Runs the command ARGS on the warm repository state, reading it
+     *  afresh if another process has changed the repository since the
+     *  last command. */
+    private void run(String... args) {
+        if (args.length == 2 && args[0].equals("daemon")
+                && args[1].equals("stop")) {
+            _running = false;
+            System.out.println("Gitlet daemon stopped.");
+            return;
+        }
+        if (_gitlet == null || !stamp().equals(_stamp)) {
+            _gitlet = new Gitlet();
+        }
+        try {
+            Main.execute(_gitlet, args);
+        } catch (IOException | RuntimeException excp) {
+            System.out.println("Internal error: " + excp);
+            _gitlet = null;
+        }
+        _stamp = stamp();
+    }
+
+    /** Returns a summary of the modification times and lengths of the
+     *  repository files whose contents the warm state caches. */
+    private static String stamp() {
+        File dir = new File(System.getProperty("user.dir"), ".gitlet");
+        StringBuilder result = new StringBuilder();
+        for (File file : new File[] { new File(dir, "index"),
+                new File(dir, "commit-graph"),
+                new File(dir, "pack") }) {
+            result.append(file.lastModified()).append(':')
+                .append(file.length()).append(' ');
+        }
+        return result.toString();
+    }
+}
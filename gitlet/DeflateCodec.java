@@ -0,0 +1,70 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** Codec that compresses objects with java.util.zip's Deflate at a
+ *  fixed compression level.
+ *  @author Ashvin Dhawan
+ */
+class DeflateCodec implements Codec {
+
+    /** Id byte of this codec. */
+    private final int _id;
+    /** Name of this codec. */
+    private final String _name;
+    /** Deflate compression level, from 1 (fastest) to 9 (smallest). */
+    private final int _level;
+
+    /** A codec with id ID and name NAME that deflates at LEVEL. */
+    DeflateCodec(int id, String name, int level) {
+        _id = id;
+        _name = name;
+        _level = level;
+    }
+
+    @Override
+    public int id() {
+        return _id;
+    }
+
+    @Override
+    public String name() {
+        return _name;
+    }
+
+    @Override
+    public OutputStream compress(OutputStream out) throws IOException {
+        Deflater deflater = new Deflater(_level);
+        return new DeflaterOutputStream(out, deflater, Utils.BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    @Override
+    public InputStream decompress(InputStream in) throws IOException {
+        Inflater inflater = new Inflater();
+        return new InflaterInputStream(in, inflater, Utils.BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,146 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** Binary deltas between two versions of a file, used to store a blob in
+ *  a pack as the changes from a similar base blob.  A delta is the length
+ *  of the target as a varint followed by a sequence of instructions: the
+ *  byte COPY (0x80), followed by an offset and a length as varints,
+ *  copies that range of the base; a byte N from 1 to MAX_INSERT (0x7f)
+ *  is followed by N literal bytes of the target.  Every other byte is
+ *  reserved, and a delta holding one is corrupt.
+ *  @author Ashvin Dhawan
+ */
+class Delta {
+
+    /** Length of the blocks of the base that are indexed for matching. */
+    static final int BLOCK = 16;
+    /** Marks a copy instruction. */
+    static final int COPY = 0x80;
+    /** Longest run of literal bytes in one insert instruction. */
+    static final int MAX_INSERT = 0x7f;
+
+    /** Returns a delta that rebuilds TARGET from BASE.  Matches are found
+     *  by indexing BASE in BLOCK-sized pieces and extending every hit in
+     *  both directions, so the work is linear in the sizes of both. */
+    static byte[] create(byte[] base, byte[] target) {
+        HashMap<Integer, Integer> index = new HashMap<Integer, Integer>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            index.putIfAbsent(hash(base, i), i);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, target.length);
+        int pending = 0, i = 0;
+        while (i + BLOCK <= target.length) {
+            Integer hit = index.get(hash(target, i));
+            if (hit == null || !Arrays.equals(base, hit, hit + BLOCK,
+                    target, i, i + BLOCK)) {
+                i += 1;
+                continue;
+            }
+            int b = hit, t = i;
+            while (b > 0 && t > pending && base[b - 1] == target[t - 1]) {
+                b -= 1;
+                t -= 1;
+            }
+            int length = i - t + BLOCK;
+            while (b + length < base.length && t + length < target.length
+                   && base[b + length] == target[t + length]) {
+                length += 1;
+            }
+            insert(out, target, pending, t);
+            out.write(COPY);
+            writeVarint(out, b);
+            writeVarint(out, length);
+            i = t + length;
+            pending = i;
+        }
+        insert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+
+    /** Returns the target rebuilt by applying DELTA to BASE.  Throws
+     *  IllegalArgumentException if DELTA is corrupt: it holds a reserved
+     *  instruction, reaches outside BASE or DELTA, or does not build a
+     *  target of the length it gives. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        try {
+            int[] pos = { 0 };
+            byte[] target = new byte[(int) readVarint(delta, pos)];
+            int t = 0;
+            while (pos[0] < delta.length) {
+                int op = delta[pos[0]] & 0xff;
+                pos[0] += 1;
+                if (op == COPY) {
+                    int offset = (int) readVarint(delta, pos);
+                    int length = (int) readVarint(delta, pos);
+                    System.arraycopy(base, offset, target, t, length);
+                    t += length;
+                } else if (op >= 1 && op <= MAX_INSERT) {
+                    System.arraycopy(delta, pos[0], target, t, op);
+                    pos[0] += op;
+                    t += op;
+                } else {
+                    throw corrupt();
+                }
+            }
+            if (t != target.length) {
+                throw corrupt();
+            }
+            return target;
+        } catch (IndexOutOfBoundsException | NegativeArraySizeException
+                 excp) {
+            throw corrupt();
+        }
+    }
+
+    /** Returns the exception for a corrupt delta. */
+    private static IllegalArgumentException corrupt() {
+        return new IllegalArgumentException("corrupt delta");
+    }
+
+    /** Writes the bytes TARGET[START .. END-1] to OUT as inserts. */
+    private static void insert(ByteArrayOutputStream out, byte[] target,
+                               int start, int end) {
+        while (start < end) {
+            int n = Math.min(MAX_INSERT, end - start);
+            out.write(n);
+            out.write(target, start, n);
+            start += n;
+        }
+    }
+
+    /** Returns a hash of the BLOCK bytes of DATA starting at START. */
+    private static int hash(byte[] data, int start) {
+        int h = 0;
+        for (int i = start; i < start + BLOCK; i += 1) {
+            h = 31 * h + data[i];
+        }
+        return h;
+    }
+
+    /** Writes the non-negative VALUE to OUT, seven bits per byte, low
+     *  bits first. */
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while (value >= COPY) {
+            out.write((int) (value & MAX_INSERT) | COPY);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /** Returns the varint in DATA at POS[0], advancing POS[0] past it. */
+    private static long readVarint(byte[] data, int[] pos) {
+        long result = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = data[pos[0]] & 0xff;
+            pos[0] += 1;
+            result |= (long) (b & MAX_INSERT) << shift;
+            if (b < COPY) {
+                return result;
+            }
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/** A longest common subsequence of the lines of two texts, found with
+ *  Myers' O(ND) algorithm in its linear-space form: the middle snake of
+ *  the edit graph is found by searching forward from the start and
+ *  backward from the end at once, and the halves on either side of it are
+ *  solved recursively, so only two vectors of O(N + M) ints are live at a
+ *  time.  Before the search, lines are replaced by small integers, common
+ *  leading and trailing lines are matched directly, and lines occurring
+ *  in only one of the texts are set aside, since they can never match;
+ *  this keeps the search short when the texts are largely different.
+ *  The result can be written as a unified diff.
+ *  @author Ashvin Dhawan
+ */
+class Diff {
+
+    /** Stands for a line that matches nothing. */
+    static final int NONE = -1;
+    /** Number of unchanged lines shown around each change. */
+    static final int CONTEXT = 3;
+
+    /** Lines of the first text, as integers. */
+    private final int[] _a;
+    /** Lines of the second text, as integers. */
+    private final int[] _b;
+    /** Map from each line of _a to the line of _b it matches, or NONE. */
+    private final int[] _match;
+
+    /** A diff of the sequences A and B. */
+    private Diff(int[] a, int[] b) {
+        _a = a;
+        _b = b;
+        _match = new int[a.length];
+        Arrays.fill(_match, NONE);
+    }
+
+    /** Returns the lines of TEXT, each with its line terminator; the last
+     *  line lacks one if TEXT does not end with a newline. */
+    static List<String> lines(String text) {
+        ArrayList<String> result = new ArrayList<String>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            end = end < 0 ? text.length() : end + 1;
+            result.add(text.substring(start, end));
+            start = end;
+        }
+        return result;
+    }
+
+    /** Returns a map from each line of A to the line of B it is matched
+     *  with in a longest common subsequence of A and B, or to NONE.  The
+     *  matched lines of B increase with those of A. */
+    static int[] match(List<String> a, List<String> b) {
+        HashMap<String, Integer> codes = new HashMap<String, Integer>();
+        int[] x = encode(a, codes), y = encode(b, codes);
+        int[] inA = new int[codes.size()], inB = new int[codes.size()];
+        for (int c : x) {
+            inA[c] += 1;
+        }
+        for (int c : y) {
+            inB[c] += 1;
+        }
+        int[] keptA = keep(x, inB), keptB = keep(y, inA);
+        Diff diff = new Diff(pick(x, keptA), pick(y, keptB));
+        diff.solve(0, keptA.length, 0, keptB.length);
+        int[] result = new int[a.size()];
+        Arrays.fill(result, NONE);
+        for (int i = 0; i < keptA.length; i += 1) {
+            if (diff._match[i] != NONE) {
+                result[keptA[i]] = keptB[diff._match[i]];
+            }
+        }
+        return result;
+    }
+
+    /** Writes to OUT the differences between the texts BEFORE and AFTER,
+     *  named OLDNAME and NEWNAME, in unified format with CONTEXT lines of
+     *  context.  Writes nothing if they are equal. */
+    static void unified(String oldName, String newName, String before,
+                        String after, Writer out) throws IOException {
+        List<String> a = lines(before), b = lines(after);
+        int[] match = match(a, b);
+        int n = a.size(), m = b.size();
+        int[] nextA = new int[n + m + 1], nextB = new int[n + m + 1];
+        boolean[] same = new boolean[n + m];
+        int ops = 0;
+        for (int i = 0, j = 0; i < n || j < m; ops += 1) {
+            nextA[ops] = i;
+            nextB[ops] = j;
+            if (i < n && match[i] == j) {
+                same[ops] = true;
+                i += 1;
+                j += 1;
+            } else if (i < n && match[i] == NONE) {
+                i += 1;
+            } else {
+                j += 1;
+            }
+        }
+        nextA[ops] = n;
+        nextB[ops] = m;
+        boolean headed = false;
+        for (int k = 0; k < ops;) {
+            if (same[k]) {
+                k += 1;
+                continue;
+            }
+            int start = Math.max(0, k - CONTEXT), end = k;
+            while (true) {
+                while (end < ops && !same[end]) {
+                    end += 1;
+                }
+                int run = end;
+                while (run < ops && same[run]) {
+                    run += 1;
+                }
+                if (run == ops || run - end > 2 * CONTEXT) {
+                    end = Math.min(end + CONTEXT, run);
+                    break;
+                }
+                end = run;
+            }
+            if (!headed) {
+                out.write("--- " + oldName + "\n+++ " + newName + "\n");
+                headed = true;
+            }
+            hunk(a, b, nextA, nextB, same, start, end, out);
+            k = end;
+        }
+    }
+
+    /** Writes to OUT the hunk made of the edit operations START..END of
+     *  the lines A and B, where operation K is at line NEXTA[K] of A and
+     *  NEXTB[K] of B, and SAME[K] tells whether it keeps a line. */
+    private static void hunk(List<String> a, List<String> b, int[] nextA,
+                             int[] nextB, boolean[] same, int start,
+                             int end, Writer out) throws IOException {
+        int oldCount = nextA[end] - nextA[start];
+        int newCount = nextB[end] - nextB[start];
+        out.write("@@ -" + range(nextA[start], oldCount) + " +"
+                + range(nextB[start], newCount) + " @@\n");
+        for (int k = start; k < end; k += 1) {
+            if (same[k]) {
+                line(' ', a.get(nextA[k]), out);
+            } else if (nextA[k + 1] > nextA[k]) {
+                line('-', a.get(nextA[k]), out);
+            } else {
+                line('+', b.get(nextB[k]), out);
+            }
+        }
+    }
+
+    /** Returns the range of COUNT lines from line START (numbered from 0)
+     *  as a unified hunk header shows it. */
+    private static String range(int start, int count) {
+        if (count == 1) {
+            return Integer.toString(start + 1);
+        }
+        return (count == 0 ? start : start + 1) + "," + count;
+    }
+
+    /** Writes LINE to OUT after the marker MARKER, noting a missing final
+     *  newline. */
+    private static void line(char marker, String line, Writer out)
+        throws IOException {
+        out.write(marker);
+        out.write(line);
+        if (!line.endsWith("\n")) {
+            out.write("\n\\ No newline at end of file\n");
+        }
+    }
+
+    /** Returns LINES as integers, numbering each distinct line in CODES. */
+    private static int[] encode(List<String> lines,
+                                HashMap<String, Integer> codes) {
+        int[] result = new int[lines.size()];
+        for (int i = 0; i < result.length; i += 1) {
+            Integer code = codes.get(lines.get(i));
+            if (code == null) {
+                code = codes.size();
+                codes.put(lines.get(i), code);
+            }
+            result[i] = code;
+        }
+        return result;
+    }
+
+    /** Returns the positions in X of the lines whose count in OTHER is not
+     *  zero. */
+    private static int[] keep(int[] x, int[] other) {
+        int n = 0;
+        int[] result = new int[x.length];
+        for (int i = 0; i < x.length; i += 1) {
+            if (x[i] < other.length && other[x[i]] > 0) {
+                result[n] = i;
+                n += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Returns the elements of X at the positions POSITIONS. */
+    private static int[] pick(int[] x, int[] positions) {
+        int[] result = new int[positions.length];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = x[positions[i]];
+        }
+        return result;
+    }
+
+    /** Matches the lines of _a[ALO..AHI) with those of _b[BLO..BHI). */
+    private void solve(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && _a[aLo] == _b[bLo]) {
+            _match[aLo] = bLo;
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && _a[aHi - 1] == _b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+            _match[aHi] = bHi;
+        }
+        if (aLo == aHi || bLo == bHi) {
+            return;
+        }
+        int[] snake = middleSnake(aLo, aHi, bLo, bHi);
+        solve(aLo, snake[0], bLo, snake[1]);
+        for (int x = snake[0], y = snake[1]; x < snake[2]; x += 1, y += 1) {
+            _match[x] = y;
+        }
+        solve(snake[2], aHi, snake[3], bHi);
+    }
+
+    /** Returns the start and end {X0, Y0, X1, Y1} of the middle snake of
+     *  the edit graph of _a[ALO..AHI) and _b[BLO..BHI), both of which are
+     *  non-empty and differ in their first and last lines. */
+    private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo, m = bHi - bLo, delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int max = (n + m + 1) / 2 + 1, offset = max;
+        int[] forward = new int[2 * max + 1], backward = new int[2 * max + 1];
+        for (int d = 0; d < max; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || k != d
+                    && forward[offset + k - 1] < forward[offset + k + 1]
+                    ? forward[offset + k + 1] : forward[offset + k - 1] + 1;
+                int y = x - k, x0 = x, y0 = y;
+                while (x < n && y < m && _a[aLo + x] == _b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                forward[offset + k] = x;
+                int r = delta - k;
+                if (odd && r >= -(d - 1) && r <= d - 1
+                        && x + backward[offset + r] >= n) {
+                    return new int[] { aLo + x0, bLo + y0, aLo + x, bLo + y };
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || k != d
+                    && backward[offset + k - 1] < backward[offset + k + 1]
+                    ? backward[offset + k + 1]
+                    : backward[offset + k - 1] + 1;
+                int y = x - k, x0 = x, y0 = y;
+                while (x < n && y < m
+                        && _a[aHi - 1 - x] == _b[bHi - 1 - y]) {
+                    x += 1;
+                    y += 1;
+                }
+                backward[offset + k] = x;
+                int f = delta - k;
+                if (!odd && f >= -d && f <= d
+                        && x + forward[offset + f] >= n) {
+                    return new int[] { aHi - x, bHi - y, aHi - x0, bHi - y0 };
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+}
@@ -0,0 +1,254 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/** The binary encoding of commits, trees, the stat index and the state
+ *  files of a repository, written and read field by field without
+ *  reflection.  Every encoding starts with a kind byte saying what it
+ *  holds and a version byte, so that the format of one kind can change
+ *  without breaking the others, and a reader refuses what it does not
+ *  understand instead of misreading it.
+ *
+ *  Counts and lengths are unsigned variable-length integers (seven bits
+ *  per byte, low bits first); times are 8-byte big-endian longs; strings
+ *  are a length and UTF-8 bytes, with length 0 for null and one more than
+ *  the byte count otherwise; ids are a tag byte (0 for null, 1 for a
+ *  SHA-1, 2 for anything else) followed by 20 binary bytes or a string.
+ *  @author Ashvin Dhawan
+ */
+class Encoding {
+
+    /** Version of all the encodings written here. */
+    static final int VERSION = 1;
+    /** Kind byte of an encoded Commit. */
+    static final int COMMIT = 'C';
+    /** Kind byte of an encoded Tree. */
+    static final int TREE = 'T';
+    /** Kind byte of an encoded Index. */
+    static final int INDEX = 'I';
+    /** Kind byte of an encoded map from strings to ids. */
+    static final int MAP = 'M';
+    /** Kind byte of an encoded string. */
+    static final int STRING = 'S';
+
+    /** Tag of a missing id. */
+    private static final int NULL_ID = 0;
+    /** Tag of a SHA-1 id stored as 20 bytes. */
+    private static final int SHA1_ID = 1;
+    /** Tag of any other id, stored as a string. */
+    private static final int OTHER_ID = 2;
+
+    /** Rebuilds a value of type T from its encoding. */
+    interface Decoder<T> {
+        /** Returns the value encoded in BYTES.  Throws
+         *  IllegalArgumentException if BYTES are not such an encoding. */
+        T decode(byte[] bytes);
+    }
+
+    /** Builds the encoding of one value. */
+    static class Writer {
+
+        /** Bytes written so far. */
+        private final ByteArrayOutputStream _out =
+            new ByteArrayOutputStream();
+
+        /** A writer of a value of kind KIND. */
+        Writer(int kind) {
+            _out.write(kind);
+            _out.write(VERSION);
+        }
+
+        /** Writes the unsigned integer N and returns this writer. */
+        Writer count(long n) {
+            while ((n & ~0x7fL) != 0) {
+                _out.write((int) (n & 0x7f) | 0x80);
+                n >>>= 7;
+            }
+            _out.write((int) n);
+            return this;
+        }
+
+        /** Writes the long N in 8 bytes and returns this writer. */
+        Writer time(long n) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                _out.write((int) (n >>> shift));
+            }
+            return this;
+        }
+
+        /** Writes the string S, which may be null, and returns this
+         *  writer. */
+        Writer string(String s) {
+            if (s == null) {
+                return count(0);
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            count(bytes.length + 1L);
+            _out.write(bytes, 0, bytes.length);
+            return this;
+        }
+
+        /** Writes the id ID, which may be null, and returns this writer. */
+        Writer id(String id) {
+            if (id == null) {
+                _out.write(NULL_ID);
+            } else if (isSha1(id)) {
+                _out.write(SHA1_ID);
+                _out.write(Utils.fromHex(id), 0, Utils.ID_BYTES);
+            } else {
+                _out.write(OTHER_ID);
+                string(id);
+            }
+            return this;
+        }
+
+        /** Returns the encoding written. */
+        byte[] toByteArray() {
+            return _out.toByteArray();
+        }
+    }
+
+    /** Reads back the fields of an encoding in the order they were
+     *  written.  Running past its end throws IllegalArgumentException. */
+    static class Reader {
+
+        /** The encoding being read. */
+        private final ByteBuffer _in;
+
+        /** A reader of BYTES, which must be an encoding of kind KIND in
+         *  this version. */
+        Reader(byte[] bytes, int kind) {
+            _in = ByteBuffer.wrap(bytes);
+            if (bytes.length < 2 || _in.get() != kind
+                    || _in.get() != VERSION) {
+                throw new IllegalArgumentException("not an encoding of kind "
+                        + (char) kind + " version " + VERSION);
+            }
+        }
+
+        /** Returns the next unsigned integer. */
+        long count() {
+            try {
+                long result = 0;
+                for (int shift = 0;; shift += 7) {
+                    int b = _in.get();
+                    result |= (long) (b & 0x7f) << shift;
+                    if ((b & 0x80) == 0) {
+                        return result;
+                    }
+                    if (shift > 56) {
+                        throw new IllegalArgumentException("bad count");
+                    }
+                }
+            } catch (BufferUnderflowException excp) {
+                throw truncated();
+            }
+        }
+
+        /** Returns the next count, which must fit in an int. */
+        int size() {
+            long n = count();
+            if (n > _in.remaining() + 1L) {
+                throw truncated();
+            }
+            return (int) n;
+        }
+
+        /** Returns the next 8-byte long. */
+        long time() {
+            try {
+                return _in.getLong();
+            } catch (BufferUnderflowException excp) {
+                throw truncated();
+            }
+        }
+
+        /** Returns the next string, which may be null. */
+        String string() {
+            int n = size();
+            if (n == 0) {
+                return null;
+            } else if (n - 1 > _in.remaining()) {
+                throw truncated();
+            }
+            String result = new String(_in.array(), _in.position(), n - 1,
+                    StandardCharsets.UTF_8);
+            _in.position(_in.position() + n - 1);
+            return result;
+        }
+
+        /** Returns the next id, which may be null. */
+        String id() {
+            try {
+                int tag = _in.get();
+                if (tag == NULL_ID) {
+                    return null;
+                } else if (tag == SHA1_ID) {
+                    byte[] id = new byte[Utils.ID_BYTES];
+                    _in.get(id);
+                    return Utils.toHex(id);
+                } else if (tag == OTHER_ID) {
+                    return string();
+                }
+                throw new IllegalArgumentException("bad id tag " + tag);
+            } catch (BufferUnderflowException excp) {
+                throw truncated();
+            }
+        }
+
+        /** Returns the exception for an encoding that ends too soon. */
+        private static IllegalArgumentException truncated() {
+            return new IllegalArgumentException("truncated encoding");
+        }
+    }
+
+    /** Returns true iff ID is a SHA-1 in lower-case hexadecimal, as
+     *  Utils.sha1 produces. */
+    private static boolean isSha1(String id) {
+        if (id.length() != Utils.UID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i += 1) {
+            char c = id.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the encoding of MAP, a map from strings to ids. */
+    static byte[] encodeMap(Map<String, String> map) {
+        Writer out = new Writer(MAP).count(map.size());
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            out.string(entry.getKey()).id(entry.getValue());
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns the map from strings to ids encoded in BYTES. */
+    static HashMap<String, String> decodeMap(byte[] bytes) {
+        Reader in = new Reader(bytes, MAP);
+        int n = in.size();
+        HashMap<String, String> result = new HashMap<String, String>();
+        for (int i = 0; i < n; i += 1) {
+            result.put(in.string(), in.id());
+        }
+        return result;
+    }
+
+    /** Returns the encoding of the string S. */
+    static byte[] encodeString(String s) {
+        return new Writer(STRING).string(s).toByteArray();
+    }
+
+    /** Returns the string encoded in BYTES. */
+    static String decodeString(byte[] bytes) {
+        return new Reader(bytes, STRING).string();
+    }
+}
@@ -1,54 +1,90 @@
 package gitlet;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.Serializable;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Date;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+import java.util.TreeMap;
 
 /** Class that maintains the state of a single repository.
  *  @author Ashvin Dhawan
  */
 public class Gitlet implements Serializable {
 
-    /** Hashmap to store all commits. */
-    private HashMap<String, Commit> commitMap;
-    /** Hashmap to store files in staging area. */
-    private HashMap<String, Blob> stageMap;
+    /** Hashmap from files in staging area to their blob ids. */
+    private HashMap<String, String> stageMap;
     /** String to indicate current branch. */
     private String _curbranch;
-    /** Hashmap to store all branches and their relevant current commits. */
-    private HashMap<String, Commit> branchMap;
-    /** Hashmap to store files marked for removal. */
-    private HashMap<String, Blob> removeMap;
+    /** Hashmap to store all branches and the ids of their current commits. */
+    private HashMap<String, String> branchMap;
+    /** Hashmap from files marked for removal to their committed blob ids. */
+    private HashMap<String, String> removeMap;
     /** Hashmap to store String IDs of hashmaps. */
     private HashMap<HashMap, String> fileDirectory;
     /** Stores branchName to be added as a parent in the case of a merge. */
     private String _mergedBranch;
     /** list of all possible commands. */
     private List<String> _listArgs;
-    /** length of a SHA-1 code. */
-    static final int SHALENGTH = 40;
+    /** Content-addressed store holding every commit and blob. */
+    private ObjectStore _objects;
+    /** The state files of the repository, written when a command ends. */
+    private RepoState _state;
+    /** Cache of the blob ids of working files, loaded on first use. */
+    private Index _index;
+    /** Map from the ids of recently used root trees to the snapshots they
+     *  were flattened into by files(). */
+    private ObjectCache<HashMap<String, String>> _snapshots;
+    /** Ancestry of all commits, loaded on first use. */
+    private CommitGraph _graph;
+    /** Number of log entries written between checks that the output is
+     *  still open; the first entry is always checked, and so appears at
+     *  once. */
+    static final int LOG_FLUSH_INTERVAL = 64;
+    /** Estimated heap bytes of one entry of a flattened snapshot, besides
+     *  the characters of its path: a hash-map node, two String headers
+     *  and a 40-character id. */
+    static final long SNAPSHOT_ENTRY_BYTES = 120;
 
 
     /** Contructor for Gitlet class. */
     public Gitlet() {
-        commitMap = new HashMap<String, Commit>();
-        stageMap = new HashMap<String, Blob>();
-        branchMap = new HashMap<String, Commit>();
-        removeMap = new HashMap<String, Blob>();
+        stageMap = new HashMap<String, String>();
+        branchMap = new HashMap<String, String>();
+        removeMap = new HashMap<String, String>();
         _listArgs = Arrays.asList("init", "add",
                 "commit", "checkout", "log", "global-log", "rm",
-                "rm-branch", "find", "status", "branch", "reset", "merge");
+                "rm-branch", "find", "status", "branch", "reset", "merge",
+                "gc", "diff");
         fileDirectory = new HashMap<HashMap, String>();
+        _snapshots = new ObjectCache<HashMap<String, String>>("snapshot");
         _curbranch = "master";
+        _objects = new ObjectStore(Utils.join(
+                System.getProperty("user.dir"), ".gitlet"));
+        _state = new RepoState(Utils.join(
+                System.getProperty("user.dir"), ".gitlet"));
     }
 
 
@@ -56,28 +92,50 @@ public class Gitlet implements Serializable {
      * SIZE and ARRAYLIST ARGUMENTS. */
     public void checkIncorrectOperands(int size, ArrayList<String> arguments) {
         if (arguments.size() != size) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw new GitletException("Incorrect operands.");
+        }
+    }
+
+    /** checks that ARGUMENTS holds at least one operand. */
+    public void checkSomeOperands(ArrayList<String> arguments) {
+        if (arguments.isEmpty()) {
+            throw new GitletException("Incorrect operands.");
         }
     }
 
     /** Reads arguments from user in OPERATOR and ARGUMENTS
-     * and executes the correct gitlet command. */
+     * and executes the correct gitlet command.  The state files it changes
+     * are written only if it finishes without error. */
     public void execute(String operator,
                         ArrayList<String> arguments) throws IOException {
+        _state.clear();
+        if (_index != null) {
+            _index.expire();
+        }
+        dispatch(operator, arguments);
+        _state.save();
+        if (ObjectCache.reporting()) {
+            for (ObjectCache<?> cache : _objects.caches()) {
+                System.err.println(cache);
+            }
+            System.err.println(_snapshots);
+        }
+    }
+
+    /** Executes the gitlet command OPERATOR with operands ARGUMENTS. */
+    private void dispatch(String operator,
+                          ArrayList<String> arguments) throws IOException {
         if (!_listArgs.contains(operator)) {
-            System.out.println("No command with that name exists.");
-            System.exit(0);
+            throw new GitletException("No command with that name exists.");
         } else {
             if (operator.equals("init")) {
                 checkIncorrectOperands(0, arguments); this.init();
             } else if (!new File(".gitlet").exists()) {
-                System.out.println("Not in an initialized Gitlet directory.");
-                System.exit(0);
+                throw new GitletException(
+                        "Not in an initialized Gitlet directory.");
             } else {
                 if (operator.equals("add")) {
-                    checkIncorrectOperands(1, arguments);
-                    this.add(arguments.get(0));
+                    checkSomeOperands(arguments); this.add(arguments);
                 } else if (operator.equals("commit")) {
                     checkIncorrectOperands(1, arguments);
                     this.commit(arguments.get(0), false);
@@ -94,12 +152,11 @@ public class Gitlet implements Serializable {
                         System.out.println("Incorrect operands.");
                     }
                 } else if (operator.equals("log")) {
-                    checkIncorrectOperands(0, arguments); this.log();
+                    this.log(LogFilter.parse(arguments));
                 } else if (operator.equals("global-log")) {
-                    checkIncorrectOperands(0, arguments); this.globalLog();
+                    this.globalLog(LogFilter.parse(arguments));
                 } else if (operator.equals("rm")) {
-                    checkIncorrectOperands(1, arguments);
-                    this.rm(arguments.get(0));
+                    checkSomeOperands(arguments); this.rm(arguments);
                 } else if (operator.equals("rm-branch")) {
                     checkIncorrectOperands(1, arguments);
                     this.rmBranch(arguments.get(0));
@@ -117,9 +174,13 @@ public class Gitlet implements Serializable {
                 } else if (operator.equals("merge")) {
                     checkIncorrectOperands(1, arguments);
                     this.merge(arguments.get(0));
+                } else if (operator.equals("gc")) {
+                    checkIncorrectOperands(0, arguments); this.gc();
+                } else if (operator.equals("diff")) {
+                    this.diff(arguments);
                 } else {
-                    System.out.println("No command with that name exists.");
-                    System.exit(0);
+                    throw new GitletException(
+                            "No command with that name exists.");
                 }
             }
         }
@@ -130,149 +191,402 @@ public class Gitlet implements Serializable {
     public void init() throws IOException {
         Path path = Paths.get(".gitlet");
         if (Files.exists(path)) {
-            System.out.println("A Gitlet version-control "
+            throw new GitletException("A Gitlet version-control "
                     + "system already exists in the current directory.");
-            System.exit(0);
         } else {
             Files.createDirectory(path);
+            _objects.create();
+            String emptyTree = Tree.write(_objects,
+                    new HashMap<String, String>());
             Commit emptyCommit = new Commit("initial commit", null,
-                    new HashMap<String, Blob>(), new Date(0), _curbranch);
-            byte[] initial = Utils.serialize(emptyCommit);
-            commitMap.put(Utils.sha1(initial), emptyCommit);
-            commitMap.put("Current commit", emptyCommit);
-            branchMap.put("master", emptyCommit);
-            pushHashMap(commitMap, "commitMap");
+                    emptyTree, new Date(0), _curbranch);
+            String initial = emptyCommit.sha();
+            _objects.put(initial, emptyCommit.encode());
+            branchMap.put("master", initial);
+            pushHead(initial);
             pushHashMap(stageMap, "stageMap");
             pushHashMap(branchMap, "branchMap");
             pushHashMap(removeMap, "removeMap");
             pushCurrBranch(_curbranch);
+            graph();
         }
     }
 
+    /** Records ID as the id of the current commit, kept in the small ref
+     *  file head. */
+    public void pushHead(String id) {
+        _state.put("head", id, () -> Encoding.encodeString(id));
+    }
+
+    /** Returns the id of the current commit. */
+    public String pullHead() {
+        return _state.get("head", Encoding::decodeString);
+    }
+
     /** Persistence serialization for current branch with string CUR. */
     public void pushCurrBranch(String cur) {
-        String branchPath = System.getProperty("user.dir")
-                + "/.gitlet/" + "branch";
-        File file = new File(branchPath);
-        Utils.writeContents(file, Utils.serialize(cur));
+        _state.put("branch", cur, () -> Encoding.encodeString(cur));
     }
 
     /** Persistence accessor for current branch; return string. */
     public String pullCurrBranch() {
-        String branchPath = System.getProperty("user.dir")
-                + "/.gitlet/" + "branch";
-        File file = new File(branchPath);
-        return Utils.readObject(file, String.class);
+        return _state.get("branch", Encoding::decodeString);
+    }
+
+    /** Records the changed hashmap MAP identified by a unique FILENAME,
+     * to be written when the current command finishes. */
+    public void pushHashMap(HashMap<String, String> map, String fileName) {
+        _state.put(fileName, map, () -> Encoding.encodeMap(map));
+    }
+
+    /** Returns the hashmap of ids identified by a unique FILENAME to be
+     *  modified, reading it on its first use in the current command. */
+    public HashMap<String, String> pullRefHashMap(String fileName) {
+        return _state.get(fileName, Encoding::decodeMap);
+    }
+
+    /** Returns the commit with id ID from the object store, or null if
+     *  there is none. */
+    public Commit getCommit(String id) {
+        return _objects.get(id, Commit::decode);
+    }
+
+    /** Returns the blob with id ID from the object store, or null if
+     *  there is none. */
+    public Blob getBlob(String id) {
+        return _objects.getBlob(id);
+    }
+
+    /** Returns the map from the path of every file in COMMIT to its blob
+     *  id.  The result is shared and must not be modified. */
+    public HashMap<String, String> files(Commit commit) {
+        HashMap<String, String> result = _snapshots.get(commit.tree());
+        if (result == null) {
+            result = new HashMap<String, String>();
+            Tree.flatten(_objects, commit.tree(), "", result);
+            long bytes = 0;
+            for (String path : result.keySet()) {
+                bytes += SNAPSHOT_ENTRY_BYTES + path.length();
+            }
+            _snapshots.put(commit.tree(), result, bytes);
+        }
+        return result;
+    }
+
+    /** Returns a map from the path of every file whose blob id differs
+     *  between commits FROM and TO to its id in TO, or to null if TO lacks
+     *  it.  Directories whose trees are the same in both are skipped. */
+    public TreeMap<String, String> changes(Commit from, Commit to) {
+        TreeMap<String, String> result = new TreeMap<String, String>();
+        Tree.diff(_objects, from.tree(), to.tree(), "", result);
+        return result;
+    }
+
+    /** Returns FILENAME, given relative to the working directory, as a
+     *  normalized path with components separated by Tree.SEPARATOR. */
+    public String path(String fileName) {
+        return Paths.get(fileName).normalize().toString()
+            .replace(File.separatorChar, Tree.SEPARATOR);
+    }
+
+    /** Returns the commit graph, loading it on first use.  If there is
+     *  none yet, it is built from the commits reachable from the branches
+     *  and the current commit. */
+    public CommitGraph graph() {
+        if (_graph == null) {
+            _graph = CommitGraph.load(
+                    Utils.join(workingDir(), ".gitlet", "commit-graph"));
+            if (_graph.size() == 0) {
+                for (String head : pullRefHashMap("branchMap").values()) {
+                    addToGraph(head);
+                }
+                addToGraph(pullHead());
+                _graph.save();
+            }
+        }
+        return _graph;
+    }
+
+    /** Adds commit ID to the commit graph, after any of its ancestors that
+     *  are missing from it, and returns its position in the graph. */
+    public int addToGraph(String id) {
+        ArrayDeque<String> stack = new ArrayDeque<String>();
+        stack.push(id);
+        while (!stack.isEmpty()) {
+            String top = stack.peek();
+            if (_graph.find(top) != CommitGraph.NONE) {
+                stack.pop();
+                continue;
+            }
+            Commit commit = getCommit(top);
+            boolean ready = true;
+            if (commit.parent() != null) {
+                for (String parent : commit.parent()) {
+                    if (_graph.find(parent) == CommitGraph.NONE) {
+                        stack.push(parent);
+                        ready = false;
+                    }
+                }
+            }
+            if (ready) {
+                stack.pop();
+                _graph.add(top, commit.parent(), commit.date().getTime());
+            }
+        }
+        return _graph.find(id);
+    }
+
+    /** Returns the position of COMMIT in the commit graph, adding it if
+     *  it was made without updating the graph. */
+    public int node(Commit commit) {
+        int result = graph().find(commit.sha());
+        return result != CommitGraph.NONE ? result : addToGraph(commit.sha());
+    }
+
+    /** Returns the full id of the commit whose id is or begins with ID,
+     *  looked up in the commit graph.  Throws GitletException if no
+     *  commit or more than one commit matches. */
+    public String resolve(String id) {
+        List<Integer> found = graph().findAll(id.toLowerCase(), 2);
+        if (found.isEmpty()) {
+            throw new GitletException("No commit with that id exists.");
+        } else if (found.size() > 1) {
+            throw new GitletException(
+                    "More than one commit has that id prefix.");
+        }
+        return graph().id(found.get(0));
+    }
+
+    /** Returns the working directory. */
+    public File workingDir() {
+        return new File(System.getProperty("user.dir"));
+    }
+
+    /** Returns the stat index of working files, loading it on first use. */
+    public Index index() {
+        if (_index == null) {
+            _index = Index.load(Utils.join(workingDir(), ".gitlet", "index"));
+        }
+        return _index;
     }
 
-    /** Reserializes and writes a hashmap MAP identified by a unique
-     * FILENAME to save changes for the next run. */
-    public void pushHashMap(HashMap map, String fileName) {
-        String mapPath = System.getProperty("user.dir")
-                + "/.gitlet/" + fileName;
-        File file = new File(mapPath);
-        Utils.writeContents(file, Utils.serialize(map));
+    /** Writes blob ID to working file FILENAME, unless the stat index
+     *  shows that the file already holds it. */
+    public void checkoutBlob(String fileName, String id) {
+        if (id.equals(index().id(workingDir(), fileName))) {
+            return;
+        }
+        writeBlob(fileName, id);
+        index().record(workingDir(), fileName, id);
+    }
+
+    /** Writes blob ID to working file FILENAME, creating its directory if
+     *  need be, without consulting or updating the stat index.  The blob
+     *  is copied from the object store without being held in memory.  May
+     *  be called from several threads at once. */
+    private void writeBlob(String fileName, String id) {
+        File file = new File(workingDir(), fileName);
+        file.getParentFile().mkdirs();
+        try {
+            _objects.copyTo(id, file);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Throws GitletException if applying CHANGES would overwrite a working
+     *  file that is untracked: absent from the commit being left, as
+     *  BEFORE records for each changed path, and from the staging area
+     *  STAGEMAP.  Only the changed paths are looked at. */
+    private void checkUntracked(Map<String, String> changes,
+                                Map<String, String> before,
+                                Map<String, String> stageMap) {
+        for (Map.Entry<String, String> entry : changes.entrySet()) {
+            String path = entry.getKey();
+            if (entry.getValue() != null && before.get(path) == null
+                    && !stageMap.containsKey(path)
+                    && new File(workingDir(), path).isFile()) {
+                throw new GitletException("There is an untracked file in "
+                        + "the way; delete it or add it first.");
+            }
+        }
     }
 
-    /** Unserializes and returns a hashmap identified by a
-     *  unique FILENAME to be modified. */
-    @SuppressWarnings("unchecked")
-    public HashMap<String, Blob> pullBlobHashMap(String fileName) {
-        String mapPath = System.getProperty("user.dir")
-                + "/.gitlet/" + fileName;
-        File file = new File(mapPath);
-        return Utils.readObject(file, HashMap.class);
+    /** Brings the working files from one commit to another, given CHANGES,
+     *  a map from each path whose blob id differs between them to its id
+     *  in the new commit, or null if it lacks it.  If TRACKED is null,
+     *  files the two commits share are not touched; otherwise it maps
+     *  every path of the new commit to its blob id, and each of those is
+     *  checked as well, so that shared files that were edited or deleted
+     *  are restored.  Files to delete go first; files to write are checked
+     *  against the stat index, and those that do not already hold their
+     *  blob are written in parallel on the WorkTree pool, then recorded in
+     *  the index, which is saved. */
+    private void switchFiles(Map<String, String> changes,
+                             Map<String, String> tracked) {
+        Map<String, String> ids = tracked == null ? changes : tracked;
+        ArrayList<String> writes = new ArrayList<String>();
+        for (Map.Entry<String, String> entry : changes.entrySet()) {
+            if (entry.getValue() == null) {
+                WorkTree.delete(workingDir(), entry.getKey());
+                index().forget(entry.getKey());
+            } else if (tracked == null) {
+                writes.add(entry.getKey());
+            }
+        }
+        if (tracked != null) {
+            writes.addAll(tracked.keySet());
+        }
+        TreeMap<String, String> present = index().ids(workingDir(), writes);
+        writes.removeIf(path -> ids.get(path).equals(present.get(path)));
+        WorkTree.map(writes, path -> {
+            writeBlob(path, ids.get(path));
+            return path;
+        });
+        for (String path : writes) {
+            index().record(workingDir(), path, ids.get(path));
+        }
+        index().save();
     }
 
-    /** Unserializes and returns a hashmap identified by a
-     *  unique FILENAME to be modified. */
-    @SuppressWarnings("unchecked")
-    public HashMap<String, Commit> pullCommitHashMap(String fileName) {
-        String mapPath = System.getProperty("user.dir")
-                + "/.gitlet/" + fileName;
-        File file = new File(mapPath);
-        return Utils.readObject(file, HashMap.class);
+    /** Returns the current commit. */
+    public Commit currentCommit() {
+        return getCommit(pullHead());
     }
 
     /** Adds file FILENAME to the staging area. */
     public void add(String fileName) {
-        HashMap<String, Blob> tempStageMap = pullBlobHashMap("stageMap");
-        String filePath = System.getProperty("user.dir") + "/" + fileName;
-        File file = new File(filePath);
-        Path path = Paths.get(filePath);
-        if (!Files.exists(path)) {
-            System.out.println("File does not exist.");
-            System.exit(0);
-        }
-        Blob toAdd = new Blob(fileName);
-        byte [] serializedBlob = Utils.serialize(toAdd);
-        String byteSha = Utils.sha1(serializedBlob);
-
-        HashMap tempRemoveMap = pullBlobHashMap("removeMap");
-        if (tempRemoveMap.get(fileName) != null) {
-            tempRemoveMap.remove(fileName);
-        }
-        pushHashMap(tempRemoveMap, "removeMap");
+        add(Arrays.asList(fileName));
+    }
 
-        HashMap tempCommitMap = pullCommitHashMap("commitMap");
-        Commit currentCommit = (Commit) tempCommitMap.get("Current commit");
-        if (currentCommit.bL().get(fileName) != null) {
-            if (currentCommit.bL().get(fileName)
-                    .caS().equals
-                            (Utils.readContentsAsString(file))) {
+    /** Adds the files named by FILENAMES to the staging area.  Each name
+     *  is a path, a directory standing for every file beneath it, or a
+     *  glob pattern such as "*.txt" or "src/**".  The files are hashed and
+     *  stored in parallel, and the staging area is written once. */
+    public void add(List<String> fileNames) {
+        List<String> paths = expand(fileNames,
+            () -> WorkTree.filesIn(workingDir()));
+        for (String fileName : paths) {
+            if (!new File(workingDir(), fileName).isFile()) {
+                throw new GitletException("File does not exist.");
+            }
+        }
+        TreeMap<String, String> ids = index().ids(workingDir(), paths);
+        index().save();
+        HashMap<String, String> tempStageMap = pullRefHashMap("stageMap");
+        HashMap<String, String> tempRemoveMap = pullRefHashMap("removeMap");
+        Commit currentCommit = currentCommit();
+        ArrayList<Blob> toStore = new ArrayList<Blob>();
+        boolean unremoved = false;
+        for (String fileName : paths) {
+            String byteSha = ids.get(fileName);
+            if (tempRemoveMap.containsKey(fileName)) {
+                tempRemoveMap.remove(fileName);
+                unremoved = true;
+            }
+            if (byteSha.equals(files(currentCommit).get(fileName))) {
                 tempStageMap.remove(fileName);
-                return;
+            } else {
+                toStore.add(new Blob(fileName, byteSha));
+                tempStageMap.put(fileName, byteSha);
             }
         }
-        tempStageMap.put(fileName, toAdd);
+        WorkTree.map(toStore, blob -> {
+            _objects.putBlob(blob);
+            return null;
+        });
+        if (unremoved) {
+            pushHashMap(tempRemoveMap, "removeMap");
+        }
         pushHashMap(tempStageMap, "stageMap");
     }
 
+    /** Returns the paths named by NAMES, each listed once.  A name that
+     *  contains a glob character stands for the paths among CANDIDATES
+     *  that it matches, and a directory for the paths among CANDIDATES
+     *  beneath it; any other name is the path it denotes.  CANDIDATES is
+     *  consulted only if needed.  Throws a GitletException if a glob or
+     *  directory matches nothing. */
+    public List<String> expand(List<String> names,
+                               Supplier<Collection<String>> candidates) {
+        LinkedHashSet<String> result = new LinkedHashSet<String>();
+        Collection<String> known = null;
+        for (String name : names) {
+            String fileName = path(name);
+            boolean isGlob = name.matches(".*[*?\\[{].*");
+            boolean isDir = !isGlob
+                && new File(workingDir(), fileName).isDirectory();
+            String prefix = fileName.isEmpty() ? "" : fileName + Tree.SEPARATOR;
+            if (!isGlob && !isDir) {
+                result.add(fileName);
+                continue;
+            }
+            if (known == null) {
+                known = candidates.get();
+            }
+            PathMatcher matcher = isGlob
+                ? FileSystems.getDefault().getPathMatcher("glob:" + fileName)
+                : null;
+            int before = result.size();
+            for (String path : known) {
+                if (isGlob ? matcher.matches(Paths.get(path))
+                    : path.startsWith(prefix)) {
+                    result.add(path);
+                }
+            }
+            if (result.size() == before) {
+                throw new GitletException("File does not exist.");
+            }
+        }
+        return new ArrayList<String>(result);
+    }
+
     /** Creates a commit, or a snapshot of all changed files in the
      * working directory, with a corresponding MESSAGE and boolean ISMERGE. */
     public void commit(String message, boolean isMerge) {
         if (message.equals("")) {
-            System.out.println("Please enter a commit message.");
-            System.exit(0);
+            throw new GitletException("Please enter a commit message.");
         }
-        HashMap<String, Blob> newBlobList = new HashMap<String, Blob>();
-        HashMap<String, Commit> tempCommitMap = pullCommitHashMap("commitMap");
-        HashMap<String, Commit> tempBranchMap = pullCommitHashMap("branchMap");
+        HashMap<String, String> newBlobList = new HashMap<String, String>();
+        HashMap<String, String> tempBranchMap = pullRefHashMap("branchMap");
         String tempCurrBranch = pullCurrBranch();
-        Commit compareCommit = tempCommitMap.get("Current commit");
-        String compareCommitId = compareCommit.sha();
+        String compareCommitId = pullHead();
+        Commit compareCommit = getCommit(compareCommitId);
 
-        HashMap<String, Blob> parentBlobList = compareCommit.bL();
+        HashMap<String, String> parentBlobList = files(compareCommit);
         for (Map.Entry<String,
-                Blob> entry : parentBlobList.entrySet()) {
+                String> entry : parentBlobList.entrySet()) {
             newBlobList.put(entry.getKey(), entry.getValue());
         }
         boolean isChanged = false;
-        HashMap<String, Blob> tempRemoveMap = pullBlobHashMap("removeMap");
-        for (Map.Entry<String, Blob> entry : tempRemoveMap.entrySet()) {
+        HashMap<String, String> tempRemoveMap = pullRefHashMap("removeMap");
+        for (Map.Entry<String, String> entry : tempRemoveMap.entrySet()) {
             newBlobList.remove(entry.getKey());
             isChanged = true;
         }
-        HashMap<String, Blob> tempStageMap = pullBlobHashMap("stageMap");
-        for (Map.Entry<String, Blob> entry : tempStageMap.entrySet()) {
+        HashMap<String, String> tempStageMap = pullRefHashMap("stageMap");
+        for (Map.Entry<String, String> entry : tempStageMap.entrySet()) {
             newBlobList.put(entry.getKey(), entry.getValue());
             isChanged = true;
         }
         if (!isChanged) {
-            System.out.println("No changes added to the commit.");
-            System.exit(0);
+            throw new GitletException("No changes added to the commit.");
         }
         ArrayList<String> parents = new ArrayList<String>();
         parents.add(compareCommitId);
         if (isMerge) {
-            parents.add(tempBranchMap.get(_mergedBranch).sha());
+            parents.add(tempBranchMap.get(_mergedBranch));
         }
         Commit newCommit = new Commit(message, parents,
-                newBlobList, new Date(), tempCurrBranch);
-        tempCommitMap.put(newCommit.sha(), newCommit);
-        tempCommitMap.put("Current commit", newCommit);
-        tempBranchMap.put(tempCurrBranch, newCommit);
-        pushHashMap(tempCommitMap, "commitMap");
+                Tree.write(_objects, newBlobList), new Date(),
+                tempCurrBranch);
+        String newCommitId = newCommit.sha();
+        _objects.put(newCommitId, newCommit.encode());
+        graph();
+        addToGraph(newCommitId);
+        _graph.save();
+        pushHead(newCommitId);
+        tempBranchMap.put(tempCurrBranch, newCommitId);
         tempRemoveMap.clear();
         pushHashMap(tempRemoveMap, "removeMap");
         pushHashMap(tempBranchMap, "branchMap");
@@ -280,229 +594,314 @@ public class Gitlet implements Serializable {
         pushHashMap(tempStageMap, "stageMap");
     }
 
+    /** Gathers the objects of the repository into a pack file, storing
+     *  each new version of a file as a delta from its previous version.
+     *  Each commit is diffed against its first parent, so only the files
+     *  it changed are looked at, and unchanged subtrees are not read. */
+    public void gc() {
+        ArrayList<Commit> commits = new ArrayList<Commit>();
+        CommitGraph graph = graph();
+        for (int k = 0; k < graph.size(); k += 1) {
+            commits.add(getCommit(graph.id(k)));
+        }
+        commits.sort(Comparator.comparing(Commit::date));
+        LinkedHashMap<String, String> deltaBases =
+                new LinkedHashMap<String, String>();
+        for (Commit commit : commits) {
+            String parent = commit.firstParent();
+            TreeMap<String, String> changed = new TreeMap<String, String>();
+            HashMap<String, String> before = new HashMap<String, String>();
+            Tree.diff(_objects, parent == null ? null
+                      : getCommit(parent).tree(),
+                      commit.tree(), "", changed, before);
+            for (Map.Entry<String, String> entry : changed.entrySet()) {
+                String id = entry.getValue();
+                if (id != null && !deltaBases.containsKey(id)) {
+                    deltaBases.put(id, before.get(entry.getKey()));
+                }
+            }
+        }
+        _objects.repack(deltaBases);
+        graph().sort();
+        _graph.save();
+    }
+
     /** Restores version of file FILENAME from the most
      * recent commit in the working directory. */
     public void checkout(String fileName) throws IOException {
-        HashMap<String, Commit>  tempCommitMap = pullCommitHashMap("commitMap");
-        Commit curCommit = tempCommitMap.get("Current commit");
-        if (!curCommit.bL().containsKey(fileName)) {
-            System.out.println("File does not exist in that commit.");
-            System.exit(0);
-        }
-        Blob thisBlob = curCommit.bL().get(fileName);
-        List<String> allFiles =
-                Utils.plainFilenamesIn(System.getProperty("user.dir"));
-        if (allFiles.contains(fileName)) {
-            Path path = Paths.get(thisBlob.name());
-            Utils.writeContents(path.toFile(), thisBlob.conts());
-        } else {
-            Path path = Paths.get(thisBlob.name());
-            Utils.writeContents(path.toFile(), thisBlob.conts());
+        fileName = path(fileName);
+        Commit curCommit = currentCommit();
+        if (!files(curCommit).containsKey(fileName)) {
+            throw new GitletException("File does not exist in that commit.");
         }
-        pushHashMap(tempCommitMap, "commitMap");
+        checkoutBlob(fileName, files(curCommit).get(fileName));
+        index().save();
     }
 
     /** Restores version of file FILENAME from commit
      * with id COMMITSHA in the working directory. */
     public void checkout(String commitSha, String fileName) throws IOException {
-        HashMap<String, Commit>  tempCommitMap = pullCommitHashMap("commitMap");
-        if (commitSha.length() < SHALENGTH) {
-            for (Map.Entry<String, Commit> entry : tempCommitMap.entrySet()) {
-                if (entry.getKey().contains(commitSha)) {
-                    commitSha = entry.getKey();
-                }
-            }
-        }
-        if (!tempCommitMap.containsKey(commitSha)) {
-            System.out.println("No commit with that id exists.");
-            System.exit(0);
-        }
-        Commit prevCommit = tempCommitMap.get(commitSha);
-        if (!prevCommit.bL().containsKey(fileName)) {
-            System.out.println("File does not exist in that commit.");
-            System.exit(0);
+        fileName = path(fileName);
+        Commit prevCommit = getCommit(resolve(commitSha));
+        if (!files(prevCommit).containsKey(fileName)) {
+            throw new GitletException("File does not exist in that commit.");
         }
-        Blob thisBlob = prevCommit.bL().get(fileName);
-        Path path = Paths.get(thisBlob.name());
-        Utils.writeContents(path.toFile(), thisBlob.conts());
-        pushHashMap(tempCommitMap, "commitMap");
+        checkoutBlob(fileName, files(prevCommit).get(fileName));
+        index().save();
     }
 
-    /** checkouts entire BRANCH to working directory. */
+    /** checkouts entire BRANCH to working directory.  Only the files
+     *  that differ between the current commit and BRANCH are touched. */
     public void checkoutBranch(String branch) throws IOException {
-        HashMap<String, Commit> tempBranchMap = pullCommitHashMap("branchMap");
-        HashMap<String, Commit> tempCommitMap = pullCommitHashMap("commitMap");
+        HashMap<String, String> tempBranchMap = pullRefHashMap("branchMap");
         String tempCurrBranch = pullCurrBranch();
-        HashMap<String, Blob> untracked = getCurrentUntracked();
-        List<String> allFiles =
-                Utils.plainFilenamesIn(System.getProperty("user.dir"));
         if (tempBranchMap.get(branch) == null) {
             System.out.println("No such branch exists.");
         } else if (tempCurrBranch.equals(branch)) {
             System.out.println("No need to checkout the current branch.");
         } else {
-            Commit target = tempBranchMap.get(branch);
-            Commit cur = tempCommitMap.get("Current commit");
-            for (Map.Entry<String, Blob> entry : untracked.entrySet()) {
-                if (target.bL().containsKey(entry.getKey())) {
-                    System.out.println("There is an untracked file "
-                            + "in the way; delete it or add it first.");
-                    System.exit(0);
-                }
-            }
-            for (Map.Entry<String, Blob> entry : cur.bL().entrySet()) {
-                if (!target.bL().containsKey(entry.getKey())) {
-                    Utils.restrictedDelete(entry.getKey());
-                }
-            }
-            for (Map.Entry<String, Blob> entry : target.bL().entrySet()) {
-                if (allFiles.contains(entry.getKey())) {
-                    Path path = Paths.get(entry.getKey());
-                    Utils.writeContents(path.toFile(),
-                            entry.getValue().conts());
-                } else {
-                    Path path = Paths.get(entry.getKey());
-                    Utils.writeContents(path.toFile(),
-                            entry.getValue().conts());
-                }
-            }
+            Commit target = getCommit(tempBranchMap.get(branch));
+            Commit cur = currentCommit();
+            HashMap<String, String> tempStageMap = pullRefHashMap("stageMap");
+            TreeMap<String, String> changes = new TreeMap<String, String>(),
+                before = new TreeMap<String, String>();
+            Tree.diff(_objects, cur.tree(), target.tree(), "", changes,
+                      before);
+            checkUntracked(changes, before, tempStageMap);
+            switchFiles(changes, null);
             tempCurrBranch = branch;
-            tempCommitMap.put("Current commit", tempBranchMap.get(branch));
-            pushHashMap(tempCommitMap, "commitMap");
-            pushHashMap(tempBranchMap, "branchMap");
-            HashMap<String, Blob> tempStageMap = pullBlobHashMap("stageMap");
-            tempStageMap.clear();
-            pushHashMap(tempStageMap, "stageMap");
+            pushHead(tempBranchMap.get(branch));
+            if (!tempStageMap.isEmpty()) {
+                tempStageMap.clear();
+                pushHashMap(tempStageMap, "stageMap");
+            }
             pushCurrBranch(tempCurrBranch);
         }
     }
     /** resets working directory and head branch
-     * to a given commit with id COMMITID. */
+     * to a given commit with id COMMITID.  Every file of COMMITID is
+     * checked through the stat index, and only those that differ from it
+     * are written. */
     public void reset(String commitId) throws IOException {
-        HashMap<String, Commit> tempCommitMap = pullCommitHashMap("commitMap");
-        HashMap<String, Blob> tempStageMap = pullBlobHashMap("stageMap");
-        Commit cur = tempCommitMap.get("Current commit");
-        Commit target = tempCommitMap.get(commitId);
-        if (commitId.length() < SHALENGTH) {
-            for (Map.Entry<String, Commit> entry : tempCommitMap.entrySet()) {
-                if (entry.getKey().contains(commitId)) {
-                    commitId = entry.getKey();
-                }
-            }
-        }
-        if (!tempCommitMap.containsKey(commitId)) {
-            System.out.println("No commit with that id exists.");
-        } else {
-            HashMap<String, Blob> untracked = getCurrentUntracked();
-            List<String> allFiles =
-                    Utils.plainFilenamesIn(System.getProperty("user.dir"));
-            boolean isThere = true;
-            for (String i : allFiles) {
-                if (!cur.bL().containsKey(i) && target.bL().containsKey(i)) {
-                    isThere = false;
-                }
-            }
-            for (Map.Entry<String, Blob> entry : untracked.entrySet()) {
-                if (target.bL().containsKey(entry) || !isThere) {
-                    System.out.println("There is an untracked file in "
-                            + "the way; delete it or add it first.");
-                    return;
-                }
-            }
-            for (Map.Entry<String, Blob> entry : cur.bL().entrySet()) {
-                if (!target.bL().containsKey(entry.getKey())) {
-                    rm(entry.getKey());
-                }
-            }
-            for (Map.Entry<String, Blob> entry : target.bL().entrySet()) {
-                checkout(commitId, entry.getKey());
-            }
-            tempCommitMap.put("Current commit", tempCommitMap.get(commitId));
-            pushHashMap(tempCommitMap, "commitMap");
-        }
+        Commit cur = currentCommit();
+        commitId = resolve(commitId);
+        Commit target = getCommit(commitId);
+        TreeMap<String, String> changes = new TreeMap<String, String>(),
+            before = new TreeMap<String, String>();
+        Tree.diff(_objects, cur.tree(), target.tree(), "", changes, before);
+        checkUntracked(changes, before, pullRefHashMap("stageMap"));
+        switchFiles(changes, files(target));
+        pushHead(commitId);
     }
 
     /** creates new BRANCH and assigns its head to the current branch. */
     public void branch(String branch) {
-        HashMap<String, Commit> tempBranchMap = pullCommitHashMap("branchMap");
+        HashMap<String, String> tempBranchMap = pullRefHashMap("branchMap");
         if (tempBranchMap.containsKey(branch)) {
             System.out.println("A branch with that name already exists.");
         } else {
-            HashMap<String, Commit> tempCommitMap =
-                    pullCommitHashMap("commitMap");
-            tempBranchMap.put(branch, tempCommitMap.get("Current commit"));
-            pushHashMap(tempCommitMap, "commitMap");
+            tempBranchMap.put(branch, pullHead());
             pushHashMap(tempBranchMap, "branchMap");
         }
     }
     /** Prints out commit id, date, and commit message
-     * of current commit and all ancestor commits. */
-    public void log() {
-        HashMap<String, Commit> tempCommitMap = pullCommitHashMap("commitMap");
-        Commit curCommit = tempCommitMap.get("Current commit");
-        while (curCommit != null) {
-            if (curCommit.parent() != null && curCommit.parent().size() == 2) {
-                System.out.println("===");
-                String idLine = "commit " + curCommit.sha();
-                System.out.println(idLine);
-                String mergeLine = "Merge: "
-                        + curCommit.parent().get(0).substring(0, 7) + " "
-                        + curCommit.parent().get(1).substring(0, 7);
-                System.out.println(mergeLine);
-                String dateLine = "Date: " + curCommit.toDate();
-                System.out.println(dateLine);
-                System.out.println(curCommit.message());
-                System.out.println();
-                curCommit = tempCommitMap.get(curCommit.firstParent());
-            } else {
-                System.out.println("===");
-                String idLine = "commit " + curCommit.sha();
-                System.out.println(idLine);
-                String dateLine = "Date: " + curCommit.toDate();
-                System.out.println(dateLine);
-                System.out.println(curCommit.message());
-                System.out.println();
-                curCommit = tempCommitMap.get(curCommit.firstParent());
+     * of current commit and all ancestor commits along first parents
+     * that FILTER accepts.  The walk follows the commit graph, reads only
+     * the commits shown and stops at the limit of FILTER, at the first
+     * commit older than its range, or when the output is closed. */
+    public void log(LogFilter filter) throws IOException {
+        CommitGraph graph = graph();
+        int k = node(currentCommit());
+        Writer out = bufferedOutput();
+        int shown = 0;
+        while (k != CommitGraph.NONE && shown < filter.limit()
+                && !filter.before(graph.time(k))) {
+            if (filter.accepts(graph.time(k))) {
+                String id = graph.id(k);
+                printLog(out, id, getCommit(id));
+                shown += 1;
+                if (shown % LOG_FLUSH_INTERVAL == 1 && closed(out)) {
+                    return;
+                }
             }
+            k = graph.parent(k, 0);
         }
+        out.flush();
     }
 
-    /** Log function for every commit ever made. */
-    public void globalLog() {
-        HashMap<String, Commit> tempCommitMap = pullCommitHashMap("commitMap");
-        for (Map.Entry<String, Commit> entry : tempCommitMap.entrySet()) {
-            if (!entry.getKey().equals("Current commit")) {
-                if (entry.getValue().parent() != null
-                        && entry.getValue().parent().size() == 2) {
-                    System.out.println("===");
-                    String idLine = "commit " + entry.getKey();
-                    System.out.println(idLine);
-                    String mergeLine = "Merge: "
-                            + entry.getValue().parent().get(0).substring(0, 7)
-                            + " "
-                            + entry.getValue().parent().get(1).substring(0, 7);
-                    System.out.println(mergeLine);
-                    String dateLine = "Date: " + entry.getValue().toDate();
-                    System.out.println(dateLine);
-                    System.out.println(entry.getValue().message());
-                    System.out.println();
-                } else {
-                    System.out.println("===");
-                    String idLine = "commit " + entry.getKey();
-                    System.out.println(idLine);
-                    String dateLine = "Date: " + entry.getValue().toDate();
-                    System.out.println(dateLine);
-                    System.out.println(entry.getValue().message());
-                    System.out.println();
+    /** Log function for every commit ever made that FILTER accepts, in
+     *  the order of the commit graph.  Only the commits shown are read,
+     *  and printing stops at the limit of FILTER or when the output is
+     *  closed. */
+    public void globalLog(LogFilter filter) throws IOException {
+        CommitGraph graph = graph();
+        Writer out = bufferedOutput();
+        int shown = 0;
+        for (int k = 0; k < graph.size() && shown < filter.limit(); k += 1) {
+            if (filter.accepts(graph.time(k))) {
+                String id = graph.id(k);
+                printLog(out, id, getCommit(id));
+                shown += 1;
+                if (shown % LOG_FLUSH_INTERVAL == 1 && closed(out)) {
+                    return;
                 }
             }
         }
-        pushHashMap(tempCommitMap, "commitMap");
+        out.flush();
+    }
+
+    /** Prints, in unified format, the differences named by OPERANDS:
+     *  with none, from the stage to the working tree; with "--cached" and
+     *  at most one commit, from that commit (the current one by default)
+     *  to the stage; with one commit, from it to the working tree; and
+     *  with two commits, from the first to the second.  Only tracked
+     *  files are compared, by blob id, and only the files that differ
+     *  are read. */
+    public void diff(List<String> operands) throws IOException {
+        Commit head = currentCommit();
+        boolean cached = !operands.isEmpty()
+            && operands.get(0).equals("--cached");
+        List<String> commits = operands.subList(cached ? 1 : 0,
+                operands.size());
+        if (commits.size() > (cached ? 1 : 2)) {
+            throw new GitletException("Incorrect operands.");
+        }
+        ArrayList<Commit> from = new ArrayList<Commit>();
+        for (String id : commits) {
+            from.add(getCommit(resolve(id)));
+        }
+        TreeMap<String, String> before = new TreeMap<String, String>();
+        TreeMap<String, String> after = new TreeMap<String, String>();
+        if (from.size() == 2) {
+            Tree.diff(_objects, from.get(0).tree(), from.get(1).tree(), "",
+                    after, before);
+        } else if (cached) {
+            stagedChanges(from.isEmpty() ? head : from.get(0), head,
+                    before, after);
+        } else {
+            workingChanges(from.isEmpty() ? null : from.get(0), head,
+                    before, after);
+        }
+        boolean working = from.size() < 2 && !cached;
+        Writer out = bufferedOutput();
+        for (Map.Entry<String, String> entry : after.entrySet()) {
+            printDiff(out, entry.getKey(), before.get(entry.getKey()),
+                    entry.getValue(), working);
+            if (closed(out)) {
+                return;
+            }
+        }
+        out.flush();
+    }
+
+    /** Adds to BEFORE and AFTER every path whose blob id differs between
+     *  commit FROM and the stage, which is the current commit HEAD with
+     *  the staged and removed files applied, mapped to its ids in FROM and
+     *  in the stage, or to null where it is absent.  Only the trees that
+     *  differ and those along the staged paths are read. */
+    private void stagedChanges(Commit from, Commit head,
+                               Map<String, String> before,
+                               Map<String, String> after) {
+        Tree.diff(_objects, from.tree(), head.tree(), "", after, before);
+        HashMap<String, String> staged =
+            new HashMap<String, String>(pullRefHashMap("stageMap"));
+        for (String name : pullRefHashMap("removeMap").keySet()) {
+            staged.put(name, null);
+        }
+        for (Map.Entry<String, String> entry : staged.entrySet()) {
+            String name = entry.getKey();
+            after.put(name, entry.getValue());
+            if (!before.containsKey(name)) {
+                before.put(name, Tree.find(_objects, from.tree(), name));
+            }
+            if (Objects.equals(before.get(name), entry.getValue())) {
+                before.remove(name);
+                after.remove(name);
+            }
+        }
+    }
+
+    /** Adds to BEFORE and AFTER every tracked path whose blob id differs
+     *  between commit FROM, or the stage if FROM is null, and the working
+     *  tree, mapped to its ids in each, or to null where it is absent.
+     *  The working files are checked through the stat index, so only
+     *  those that changed are read. */
+    private void workingChanges(Commit from, Commit head,
+                                Map<String, String> before,
+                                Map<String, String> after) {
+        HashMap<String, String> stage =
+            new HashMap<String, String>(files(head));
+        stage.putAll(pullRefHashMap("stageMap"));
+        stage.keySet().removeAll(pullRefHashMap("removeMap").keySet());
+        Map<String, String> reference = from == null ? stage : files(from);
+        HashSet<String> tracked = new HashSet<String>(stage.keySet());
+        tracked.addAll(reference.keySet());
+        Map<String, String> ids = index().ids(workingDir(), tracked);
+        index().save();
+        for (String name : tracked) {
+            String old = reference.get(name), now = ids.get(name);
+            if (!Objects.equals(old, now)) {
+                before.put(name, old);
+                after.put(name, now);
+            }
+        }
+    }
+
+    /** Writes to OUT the differences in file NAME between blobs OLD and
+     *  NOW, either of which may be null for a missing file.  NOW is read
+     *  from the working tree if WORKING. */
+    private void printDiff(Writer out, String name, String old, String now,
+                           boolean working) throws IOException {
+        String before = contents(old), after;
+        if (now != null && working) {
+            after = Utils.readContentsAsString(new File(workingDir(), name));
+        } else {
+            after = contents(now);
+        }
+        out.write("diff --git a/" + name + " b/" + name + "\n");
+        String oldName = old == null ? "/dev/null" : "a/" + name;
+        String newName = now == null ? "/dev/null" : "b/" + name;
+        if (!isText(before) || !isText(after)) {
+            out.write("Binary files " + oldName + " and " + newName
+                    + " differ\n");
+        } else {
+            Diff.unified(oldName, newName, before, after, out);
+        }
+    }
+
+    /** Returns a buffered writer to the standard output for long output. */
+    private static Writer bufferedOutput() {
+        return new BufferedWriter(new OutputStreamWriter(System.out,
+                StandardCharsets.UTF_8), Utils.BUFFER_SIZE);
+    }
+
+    /** Flushes OUT and returns true iff the standard output can no longer
+     *  be written, as when a pipe it feeds has been closed. */
+    private static boolean closed(Writer out) throws IOException {
+        out.flush();
+        return System.out.checkError();
+    }
+
+    /** Writes the log entry of COMMIT, whose id is ID, to OUT. */
+    private static void printLog(Writer out, String id, Commit commit)
+        throws IOException {
+        out.write("===\ncommit ");
+        out.write(id);
+        out.write('\n');
+        if (commit.secondParent() != null) {
+            out.write("Merge: " + commit.firstParent().substring(0, 7) + " "
+                    + commit.secondParent().substring(0, 7) + "\n");
+        }
+        out.write("Date: ");
+        out.write(commit.toDate());
+        out.write('\n');
+        out.write(commit.message());
+        out.write("\n\n");
     }
 
     /** removes branch with name BRANCHNAME if applicable. */
     public void rmBranch(String branchName) {
-        HashMap<String, Commit> tempBranchMap = pullCommitHashMap("branchMap");
+        HashMap<String, String> tempBranchMap = pullRefHashMap("branchMap");
         String tempCurBranch = pullCurrBranch();
         if (!tempBranchMap.containsKey(branchName)) {
             System.out.println("A branch with that name does not exist.");
@@ -510,20 +909,19 @@ public class Gitlet implements Serializable {
             System.out.println("Cannot remove the current branch.");
         } else {
             tempBranchMap.remove(branchName);
+            pushHashMap(tempBranchMap, "branchMap");
         }
-        pushHashMap(tempBranchMap, "branchMap");
     }
 
     /** Prints branches, removed files, and staged files. */
     public void status() {
         ArrayList<String> sorter = new ArrayList<String>();
-        HashMap<String, Commit> tempBranchMap = pullCommitHashMap("branchMap");
-        HashMap<String, Blob> tempStageMap = pullBlobHashMap("stageMap");
-        HashMap<String, Blob> tempRemoveMap = pullBlobHashMap("removeMap");
-        HashMap<String, Commit> tempCommitMap = pullCommitHashMap("commitMap");
+        HashMap<String, String> tempBranchMap = pullRefHashMap("branchMap");
+        HashMap<String, String> tempStageMap = pullRefHashMap("stageMap");
+        HashMap<String, String> tempRemoveMap = pullRefHashMap("removeMap");
         String tempCurrBranch = pullCurrBranch();
         System.out.println("=== Branches ===");
-        for (Map.Entry<String, Commit> entry : tempBranchMap.entrySet()) {
+        for (Map.Entry<String, String> entry : tempBranchMap.entrySet()) {
             sorter.add(entry.getKey());
         }
         sorter.sort(String::compareToIgnoreCase);
@@ -536,7 +934,7 @@ public class Gitlet implements Serializable {
         }
         sorter.clear(); System.out.println();
         System.out.println("=== Staged Files ===");
-        for (Map.Entry<String, Blob> entry : tempStageMap.entrySet()) {
+        for (Map.Entry<String, String> entry : tempStageMap.entrySet()) {
             sorter.add(entry.getKey());
         }
         sorter.sort(String::compareToIgnoreCase);
@@ -545,7 +943,7 @@ public class Gitlet implements Serializable {
         }
         sorter.clear(); System.out.println();
         System.out.println("=== Removed Files ===");
-        for (Map.Entry<String, Blob> entry : tempRemoveMap.entrySet()) {
+        for (Map.Entry<String, String> entry : tempRemoveMap.entrySet()) {
             sorter.add(entry.getKey());
         }
         sorter.sort(String::compareToIgnoreCase);
@@ -557,39 +955,16 @@ public class Gitlet implements Serializable {
         System.out.println();
         System.out.println("=== Untracked Files ===");
         System.out.println();
-        pushHashMap(tempBranchMap, "branchMap");
-        pushHashMap(tempStageMap, "stageMap");
-        pushHashMap(tempRemoveMap, "removeMap");
-        pushHashMap(tempCommitMap, "commitMap");
-    }
-
-
-    /** returns HashMap of currently untracked files. */
-    public HashMap<String, Blob> getCurrentUntracked() {
-        HashMap<String, Commit> tempCommitMap = pullCommitHashMap("commitMap");
-        HashMap<String, Blob> tempStageMap = pullBlobHashMap("stageMap");
-        Commit cur = tempCommitMap.get("Current commit");
-        List<String> allFiles =
-                Utils.plainFilenamesIn(System.getProperty("user.dir"));
-        HashMap<String, Blob> untracked = new HashMap<String, Blob>();
-        for (String i : allFiles) {
-            if (!cur.bL().containsKey(i)
-                    && !tempStageMap.containsKey(i)) {
-                untracked.put(i, new Blob(i));
-            }
-        }
-        return untracked;
     }
+
     /** prints IDs of all commits with the given Commit MESSAGE. */
     public void find(String message) {
-        HashMap<String, Commit> tempCommitMap = pullCommitHashMap("commitMap");
         boolean isCommit = false;
-        for (Map.Entry<String, Commit> entry : tempCommitMap.entrySet()) {
-            if (!entry.getKey().equals("Current commit")) {
-                if (entry.getValue().message().equals(message)) {
-                    isCommit = true;
-                    System.out.println(entry.getKey());
-                }
+        CommitGraph graph = graph();
+        for (int k = 0; k < graph.size(); k += 1) {
+            if (getCommit(graph.id(k)).message().equals(message)) {
+                isCommit = true;
+                System.out.println(graph.id(k));
             }
         }
         if (!isCommit) {
@@ -599,198 +974,169 @@ public class Gitlet implements Serializable {
 
     /** removes file FILENAME from git tracking. */
     public void rm(String fileName) {
-        boolean isReason = false;
-        HashMap<String, Blob> tempStageMap = pullBlobHashMap("stageMap");
-        HashMap<String, Blob> tempRemoveMap = pullBlobHashMap("removeMap");
-        if (tempStageMap.containsKey(fileName)) {
-            isReason = true;
-            tempStageMap.remove(fileName);
-            pushHashMap(tempStageMap, "stageMap");
-            System.exit(0);
-        }
-        List<String> allFiles =
-                Utils.plainFilenamesIn(System.getProperty("user.dir"));
-        HashMap<String, Commit> tempCommitMap = pullCommitHashMap("commitMap");
-        Commit curCommit = tempCommitMap.get("Current commit");
-        if (curCommit.bL().containsKey(fileName)) {
-            isReason = true;
-            if (allFiles.contains(fileName)) {
-                tempRemoveMap.put(fileName, new Blob(fileName));
+        rm(Arrays.asList(fileName));
+    }
+
+    /** removes the files named by FILENAMES from git tracking.  Names are
+     *  expanded as by add, with globs and directories matched against the
+     *  tracked and staged files, and the staging and removal areas are
+     *  written once. */
+    public void rm(List<String> fileNames) {
+        HashMap<String, String> tempStageMap = pullRefHashMap("stageMap");
+        HashMap<String, String> tempRemoveMap = pullRefHashMap("removeMap");
+        Commit curCommit = currentCommit();
+        List<String> paths = expand(fileNames, () -> {
+            TreeSet<String> tracked = new TreeSet<String>(
+                files(curCommit).keySet());
+            tracked.addAll(tempStageMap.keySet());
+            return tracked;
+        });
+        int staged = tempStageMap.size();
+        boolean removedAny = false;
+        for (String fileName : paths) {
+            if (tempStageMap.containsKey(fileName)) {
+                tempStageMap.remove(fileName);
+            } else if (files(curCommit).containsKey(fileName)) {
+                removedAny = true;
+                if (new File(workingDir(), fileName).isFile()) {
+                    tempRemoveMap.put(fileName,
+                            files(curCommit).get(fileName));
+                } else {
+                    tempRemoveMap.put(fileName, null);
+                }
+                WorkTree.delete(workingDir(), fileName);
             } else {
-                tempRemoveMap.put(fileName, null);
+                System.out.println("No reason to remove the file.");
             }
-            File file = new File(fileName);
-            Utils.restrictedDelete(fileName);
         }
-        pushHashMap(tempRemoveMap, "removeMap");
-        if (!isReason) {
-            System.out.println("No reason to remove the file.");
+        if (tempStageMap.size() != staged) {
+            pushHashMap(tempStageMap, "stageMap");
+        }
+        if (removedAny) {
+            pushHashMap(tempRemoveMap, "removeMap");
         }
     }
 
     /** merges two branches, the current branch and the branch BRANCHNAME. */
     public void merge(String branchName) throws IOException {
-        HashMap<String, Blob> tempStageMap = pullBlobHashMap("stageMap");
-        HashMap<String, Blob> tempRemoveMap = pullBlobHashMap("removeMap");
-        HashMap<String, Commit> tempBranchMap = pullCommitHashMap("branchMap");
+        HashMap<String, String> tempStageMap = pullRefHashMap("stageMap");
+        HashMap<String, String> tempRemoveMap = pullRefHashMap("removeMap");
+        HashMap<String, String> tempBranchMap = pullRefHashMap("branchMap");
         String tempCurrBranch = pullCurrBranch();
         checkMergeFail(tempRemoveMap, tempStageMap,
                 tempBranchMap, tempCurrBranch, branchName);
-        Commit cur = tempBranchMap.get(tempCurrBranch);
-        Commit given = tempBranchMap.get(branchName);
+        Commit cur = getCommit(tempBranchMap.get(tempCurrBranch));
+        Commit given = getCommit(tempBranchMap.get(branchName));
         Commit splitPoint = findSplitPoint(cur, given);
-        checkAncestors(cur, given, splitPoint, tempBranchMap, tempCurrBranch);
-        checkTrackFail(branchName, splitPoint, cur, given);
-        HashMap<String, List> md = new HashMap<String, List>();
-        for (Map.Entry<String, Blob> entry : splitPoint.bL().entrySet()) {
-            String key = entry.getKey(); Blob value = entry.getValue();
-            byte[] vC = value.conts();
-            HashMap<String, Blob> gL = given.bL();
-            HashMap<String, Blob> cL = cur.bL();
-            if (gL.containsKey(key) && cL.containsKey(key)) {
-                if (!gL.get(key).equals(vC) && cL.get(key).equals(vC)) {
-                    checkout(given.sha(), key); add(key);
-                }
-                if (!gL.get(key).conts().equals(vC)
-                        && !cL.get(key).conts().equals(vC)) {
-                    if (!gL.get(key).conts().equals(cL.get(key).conts())) {
-                        md.put(key, Arrays.asList(cL.get(key).caS(),
-                                gL.get(key).caS()));
-                    }
-                }
-            }
-            if (!gL.containsKey(key) && cL.containsKey(key)) {
-                if (Arrays.equals(cL.get(key).conts(), vC)) {
-                    rm(key);
-                } else {
-                    md.put(key, Arrays.asList(cL.get(key).caS(), ""));
-                }
-            }
-            if (gL.containsKey(key) && !cL.containsKey(key)) {
-                if (!Arrays.equals(gL.get(key).conts(), vC)) {
-                    md.put(key, Arrays.asList("", gL.get(key).caS()));
-                }
-            }
+        if (checkAncestors(cur, given, splitPoint, tempBranchMap,
+                tempCurrBranch)) {
+            return;
         }
-        for (Map.Entry<String, Blob> entry : given.bL().entrySet()) {
-            if (!cur.bL().containsKey(entry.getKey())
-                    && !splitPoint.bL().containsKey(entry.getKey())) {
-                checkout(given.sha(), entry.getKey()); add(entry.getKey());
-            }
-            if (!splitPoint.bL().containsKey(entry.getKey())
-                    && cur.bL().containsKey(entry.getKey())) {
-                if (!entry.getValue().conts().equals
-                        (cur.bL().get(entry.getKey()).conts())) {
-                    md.put(entry.getKey(), Arrays.asList(cur.bL().
-                            get(entry.getKey()).caS(), given.bL().
-                            get(entry.getKey()).caS()));
+        TreeMap<String, String> ours = changes(splitPoint, cur);
+        TreeMap<String, String> theirChanges = new TreeMap<String, String>(),
+            base = new TreeMap<String, String>();
+        Tree.diff(_objects, splitPoint.tree(), given.tree(), "",
+                  theirChanges, base);
+        checkTrackFail(ours, theirChanges, base, tempStageMap);
+        TreeMap<String, String[]> md = new TreeMap<String, String[]>();
+        for (Map.Entry<String, String> entry : theirChanges.entrySet()) {
+            String key = entry.getKey(), theirs = entry.getValue();
+            if (!ours.containsKey(key)) {
+                if (theirs == null) {
+                    WorkTree.delete(workingDir(), key);
+                    index().forget(key);
+                    tempRemoveMap.put(key, base.get(key));
+                } else {
+                    checkoutBlob(key, theirs);
+                    tempStageMap.put(key, theirs);
                 }
+            } else if (!Objects.equals(ours.get(key), theirs)) {
+                md.put(key, new String[] {
+                    base.get(key), ours.get(key), theirs });
             }
         }
         cleanup(md, tempStageMap, tempBranchMap, branchName, tempCurrBranch);
     }
 
-    /** shortener method, takes in MODIFIEDDIFFERENT, TEMPSTAGEMAP,
-     * TEMPBRANCHMAP, BRANCHNAME, TEMPCURRBRANCH. */
-    public void cleanup(HashMap<String, List> modifiedDifferent,
-                        HashMap<String, Blob> tempStageMap,
-                        HashMap<String, Commit> tempBranchMap,
+    /** shortener method, takes in MODIFIEDDIFFERENT, a map from each
+     * path changed on both sides to its blob ids in the split point and
+     * the current and given commits (null where absent), TEMPSTAGEMAP,
+     * TEMPBRANCHMAP, BRANCHNAME, TEMPCURRBRANCH.  A text file present in
+     * all three is merged line by line, and only the chunks changed
+     * differently on both sides conflict; otherwise the whole file
+     * conflicts.  Only these files are read. */
+    public void cleanup(Map<String, String[]> modifiedDifferent,
+                        HashMap<String, String> tempStageMap,
+                        HashMap<String, String> tempBranchMap,
                         String branchName, String tempCurrBranch) {
-        for (Map.Entry<String, List> entry : modifiedDifferent.entrySet()) {
-            Path path = Paths.get(entry.getKey());
-            String conflict = "<<<<<<< HEAD\n"
-                    + entry.getValue().get(0) + "=======\n"
-                    + entry.getValue().get(1) + ">>>>>>>";
-            Utils.writeContents(path.toFile(), conflict);
+        boolean conflicted = false;
+        for (Map.Entry<String, String[]> entry
+                 : modifiedDifferent.entrySet()) {
+            String[] ids = entry.getValue();
+            String base = contents(ids[0]), ours = contents(ids[1]),
+                theirs = contents(ids[2]);
+            String merged;
+            if (ids[0] != null && ids[1] != null && ids[2] != null
+                    && isText(base) && isText(ours) && isText(theirs)) {
+                LineMerge lines = new LineMerge(base, ours, theirs);
+                merged = lines.text();
+                conflicted |= lines.conflicts() > 0;
+            } else {
+                merged = "<<<<<<< HEAD\n" + ours + "=======\n" + theirs
+                    + ">>>>>>>";
+                conflicted = true;
+            }
+            File file = new File(workingDir(), entry.getKey());
+            file.getParentFile().mkdirs();
+            Utils.writeContents(file, merged);
             add(entry.getKey());
         }
-        pushHashMap(tempStageMap, "stageMap");
-        pushHashMap(tempBranchMap, "branchMap");
+        index().save();
         _mergedBranch = branchName;
         commit("Merged " + branchName + " into " + tempCurrBranch + ".", true);
-        if (modifiedDifferent.size() > 0) {
+        if (conflicted) {
             System.out.println("Encountered a merge conflict.");
         }
     }
 
-    /** Returns latest common ancestor COMMIT of commits CUR and GIVEN. */
+    /** Returns true iff CONTENTS look like text: they hold no NUL
+     *  character. */
+    private static boolean isText(String contents) {
+        return contents.indexOf('\0') < 0;
+    }
+
+    /** Returns the contents of blob ID as a string, or "" if ID is
+     *  null. */
+    private String contents(String id) {
+        return id == null ? "" : getBlob(id).caS();
+    }
+
+    /** Returns latest common ancestor COMMIT of commits CUR and GIVEN: the
+     *  most recent of their merge bases in the commit graph, or null if
+     *  they have none. */
     public Commit findSplitPoint(Commit cur, Commit given) {
-        HashMap<String, Commit> tempCommitMap = pullCommitHashMap("commitMap");
-        ArrayList<String> curList = new ArrayList<String>();
-        ArrayList<String> givenList = new ArrayList<String>();
-        String curSha = Utils.sha1(Utils.serialize(cur));
-        String givenSha = Utils.sha1(Utils.serialize(given));
-        if (curSha.equals(givenSha)) {
-            return cur;
-        }
-        while (cur.firstParent() != null && given.firstParent() != null) {
-            if (cur.firstParent().equals(given.firstParent())) {
-                return tempCommitMap.get(cur.firstParent());
-            } else if (given.parent().contains(cur.firstParent())) {
-                return tempCommitMap.get(cur.firstParent());
-            } else if (cur.parent().contains(given.firstParent())) {
-                return tempCommitMap.get(given.firstParent());
-            } else {
-                if (cur.parent().size() > 1) {
-                    for (String i : cur.parent()) {
-                        curList.add(i);
-                    }
-                } else {
-                    curList.add(cur.firstParent());
-                }
-                if (given.parent().size() > 1) {
-                    for (String i : given.parent()) {
-                        givenList.add(i);
-                    }
-                } else {
-                    givenList.add(given.firstParent());
-                }
-                if (curList.contains(Utils.sha1(Utils.serialize(given)))) {
-                    return (Commit) tempCommitMap.get
-                            (Utils.sha1(Utils.serialize(given)));
-                } else if (givenList.contains
-                        (Utils.sha1(Utils.serialize(cur)))) {
-                    return (Commit) tempCommitMap.get
-                            (Utils.sha1(Utils.serialize(cur)));
-                }
-                cur = (Commit) tempCommitMap.get(cur.firstParent());
-                given = (Commit) tempCommitMap.get(given.firstParent());
-            }
-        }
-        if (cur.firstParent() == null) {
-            return cur;
-        } else if (given.firstParent() == null) {
-            return given;
-        }
-        return null;
-    }
-
-    /** Checks for untracked failure cases in merge,
-     *  takes in BRANCHNAME, SPLITPOINT, CUR, and GIVEN. */
-    public void checkTrackFail(String branchName,
-                               Commit splitPoint, Commit cur, Commit given) {
-        HashMap<String, Blob> untracked = getCurrentUntracked();
-        List<String> allFiles =
-                Utils.plainFilenamesIn(System.getProperty("user.dir"));
-
-        for (Map.Entry<String, Blob> entry : untracked.entrySet()) {
-            String key = entry.getKey();
-            Blob value = entry.getValue();
-            if (given.bL().containsKey(key)
-                    && splitPoint.bL().containsKey(key)
-                    && !given.bL().get(key).equals
-                    (splitPoint.bL().get(key))) {
-                System.out.println("There is an untracked file "
-                        + "in the way; delete it or add it first.");
-                System.exit(0);
-            }
-            if (!splitPoint.bL().containsKey(key)
-                    && given.bL().containsKey(key)) {
-                System.out.println("There is an untracked file "
-                       + "in the way; delete it or add it first.");
-                System.exit(0);
-            }
+        List<Integer> bases = MergeBase.bases(graph(), node(cur),
+                node(given));
+        return bases.isEmpty() ? null : getCommit(graph().id(bases.get(0)));
+    }
+
+    /** Checks for untracked failure cases in merge: throws
+     *  GitletException if a working file that is untracked would be
+     *  overwritten.  OURS and THEIRS map the paths changed since the split
+     *  point on the current and given sides to their new ids, and BASE
+     *  maps each path of THEIRS to its id at the split point, which is
+     *  also its current id unless OURS changed it.  TEMPSTAGEMAP is the
+     *  staging area.  Only the paths in THEIRS are looked at. */
+    public void checkTrackFail(Map<String, String> ours,
+                               Map<String, String> theirs,
+                               Map<String, String> base,
+                               Map<String, String> tempStageMap) {
+        HashMap<String, String> current = new HashMap<String, String>();
+        for (String key : theirs.keySet()) {
+            current.put(key,
+                    ours.containsKey(key) ? ours.get(key) : base.get(key));
         }
+        checkUntracked(theirs, current, tempStageMap);
     }
 
     /** Checks failures in merge, takes in TEMPREMOVEMAP, TEMPSTAGEMAP,
@@ -799,57 +1145,41 @@ public class Gitlet implements Serializable {
                                HashMap tempStageMap, HashMap tempBranchMap,
                                String tempCurrBranch, String branchName) {
         if (!tempRemoveMap.isEmpty() || !tempStageMap.isEmpty()) {
-            System.out.println("You have uncommitted changes.");
-            System.exit(0);
+            throw new GitletException("You have uncommitted changes.");
         } else if (!tempBranchMap.containsKey(branchName)) {
-            System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+            throw new GitletException(
+                    "A branch with that name does not exist.");
         } else if (tempCurrBranch.equals(branchName)) {
-            System.out.println("Cannot merge a branch with itself.");
-            System.exit(0);
+            throw new GitletException("Cannot merge a branch with itself.");
         }
     }
 
     /** Takes in CUR, GIVEN, and SPLITPOINT, TEMPBRANCHMAP,
-     * AND TEMPCURRBRANCH and checks ancestors. */
-    public void checkAncestors(Commit cur, Commit given,
+     * AND TEMPCURRBRANCH and handles the cases where one of CUR and
+     * GIVEN is the merge base of both.  Returns true iff this finished
+     * the merge by fast-forwarding, which it refuses to do if an untracked
+     * file is in the way. */
+    public boolean checkAncestors(Commit cur, Commit given,
                                Commit splitPoint,
-                               HashMap<String, Commit> tempBranchMap,
+                               HashMap<String, String> tempBranchMap,
                                String tempCurrBranch) {
-        HashMap<String, Commit> tempCommitMap = pullCommitHashMap("commitMap");
-        ArrayList<String> ancestorCur = new ArrayList<String>();
-        ArrayList<String> ancestorGiven = new ArrayList<String>();
-        Commit tempCur = cur;
-        Commit tempGiven = given;
-        while (tempCur.firstParent() != null) {
-            ancestorCur.add(tempCur.firstParent());
-            tempCur = tempCommitMap.get(tempCur.firstParent());
-        }
-        while (tempGiven.firstParent() != null) {
-            ancestorGiven.add(tempGiven.firstParent());
-            tempGiven = tempCommitMap.get(tempGiven.firstParent());
-        }
-        if (ancestorCur.contains(given.sha())) {
-            splitPoint = given;
-        }
-        if (ancestorGiven.contains(cur.sha())) {
-            splitPoint = cur;
-        }
         if (splitPoint.sha().equals(given.sha())) {
-            System.out.println("Given branch is an "
+            throw new GitletException("Given branch is an "
                     + "ancestor of the current branch.");
-            System.exit(0);
         } else if (splitPoint.sha().equals(cur.sha())) {
-            tempBranchMap.put(tempCurrBranch, given);
-            for (Map.Entry<String, Blob> entry : splitPoint.bL().entrySet()) {
-                if (!given.bL().containsKey(entry.getKey())) {
-                    rm(entry.getKey());
-                }
-            }
+            TreeMap<String, String> changes = new TreeMap<String, String>(),
+                before = new TreeMap<String, String>();
+            Tree.diff(_objects, cur.tree(), given.tree(), "", changes,
+                      before);
+            checkUntracked(changes, before, pullRefHashMap("stageMap"));
+            switchFiles(changes, null);
+            pushHead(given.sha());
+            tempBranchMap.put(tempCurrBranch, given.sha());
             System.out.println("Current branch fast-forwarded.");
             pushHashMap(tempBranchMap, "branchMap");
-            System.exit(0);
+            return true;
         }
+        return false;
     }
 }
 
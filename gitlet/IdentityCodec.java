@@ -0,0 +1,31 @@
+package gitlet;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/** Codec that leaves objects uncompressed; the fastest choice for
+ *  contents that do not compress, such as media or archives.
+ *  @author Ashvin Dhawan
+ */
+class IdentityCodec implements Codec {
+
+    @Override
+    public int id() {
+        return 0;
+    }
+
+    @Override
+    public String name() {
+        return "identity";
+    }
+
+    @Override
+    public OutputStream compress(OutputStream out) {
+        return out;
+    }
+
+    @Override
+    public InputStream decompress(InputStream in) {
+        return in;
+    }
+}
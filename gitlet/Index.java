@@ -0,0 +1,224 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/** Cache of the blob ids of working files, keyed by the size, modification
+ *  time and inode of each file when it was last hashed.  A file whose stat
+ *  data still matches its entry is not read again.  As in Git, an entry
+ *  whose file was modified no earlier than the index file itself is not
+ *  trusted, since a later change within the same file-system clock tick
+ *  would leave its stat data unchanged.
+ *  @author Ashvin Dhawan
+ */
+class Index {
+
+    /** Stat data and blob id of one working file. */
+    private static class Entry {
+        /** Length of the file in bytes. */
+        private long _size;
+        /** Modification time of the file in milliseconds. */
+        private long _mtime;
+        /** Inode (or other file key) of the file, if the system has one. */
+        private String _inode;
+        /** Blob id of the contents of the file. */
+        private String _id;
+        /** True iff the file was hashed during the current command. */
+        private boolean _fresh;
+    }
+
+    /** Map from working file names to their entries. */
+    private HashMap<String, Entry> _entries = new HashMap<String, Entry>();
+    /** Modification time of the index file when it was loaded. */
+    private long _written;
+    /** True iff this index has changed since it was loaded. */
+    private boolean _changed;
+    /** File in which this index is kept. */
+    private File _file;
+
+    /** Returns the index kept in FILE, or a new empty one if FILE does not
+     *  exist or cannot be read. */
+    static Index load(File file) {
+        Index result = null;
+        if (file.isFile()) {
+            try {
+                result = decode(Utils.readContents(file));
+            } catch (IllegalArgumentException excp) {
+                result = null;
+            }
+        }
+        if (result == null) {
+            result = new Index();
+        }
+        result._file = file;
+        result._written = file.lastModified();
+        return result;
+    }
+
+    /** Writes this index back to its file if it has changed.  The racy
+     *  rule then applies from the new modification time of the file, and
+     *  no entry is trusted merely for being hashed by this command. */
+    void save() {
+        if (_changed) {
+            Utils.writeContents(_file, encode());
+            _changed = false;
+            _written = _file.lastModified();
+            expire();
+        }
+    }
+
+    /** Stops trusting entries just because the current command hashed
+     *  them, so that the racy rule applies to them again.  A process that runs
+     *  many commands, like the Daemon, calls this as each one starts, as
+     *  a file may have changed within the clock tick of its hash. */
+    void expire() {
+        for (Entry entry : _entries.values()) {
+            entry._fresh = false;
+        }
+    }
+
+    /** Returns the encoding of this index: the number of entries and,
+     *  for each, the file name, size, modification time, inode and blob
+     *  id. */
+    private byte[] encode() {
+        Encoding.Writer out = new Encoding.Writer(Encoding.INDEX)
+            .count(_entries.size());
+        for (Map.Entry<String, Entry> entry : _entries.entrySet()) {
+            Entry e = entry.getValue();
+            out.string(entry.getKey()).count(e._size).time(e._mtime)
+                .string(e._inode).id(e._id);
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns the index encoded in BYTES. */
+    private static Index decode(byte[] bytes) {
+        Encoding.Reader in = new Encoding.Reader(bytes, Encoding.INDEX);
+        Index result = new Index();
+        for (int n = in.size(); n > 0; n -= 1) {
+            String name = in.string();
+            Entry e = new Entry();
+            e._size = in.count();
+            e._mtime = in.time();
+            e._inode = in.string();
+            e._id = in.id();
+            result._entries.put(name, e);
+        }
+        return result;
+    }
+
+    /** Returns the stat data of working file FILE as an entry without an
+     *  id, or null if FILE is not a normal file. */
+    private static Entry stat(File file) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+            if (!attrs.isRegularFile()) {
+                return null;
+            }
+            Entry result = new Entry();
+            result._size = attrs.size();
+            result._mtime = attrs.lastModifiedTime().toMillis();
+            Object key = attrs.fileKey();
+            result._inode = key == null ? null : key.toString();
+            return result;
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Returns true iff the stat data of OLD and NOW are the same, and OLD
+     *  was recorded by the current command or safely before the index file
+     *  was last written. */
+    private boolean unchanged(Entry old, Entry now) {
+        return old != null && old._size == now._size
+            && old._mtime == now._mtime
+            && (old._fresh || old._mtime < _written)
+            && Objects.equals(old._inode, now._inode);
+    }
+
+    /** Returns the entry for working file NAME in directory DIR: the
+     *  existing entry if the file's stat data has not changed, and
+     *  otherwise a new entry holding a fresh hash of the file.  Returns
+     *  null if there is no such file.  Does not modify this index, and so
+     *  may be called from several threads at once. */
+    private Entry lookup(File dir, String name) {
+        File file = new File(dir, name);
+        Entry now = stat(file);
+        if (now == null) {
+            return null;
+        }
+        Entry old = _entries.get(name);
+        if (unchanged(old, now)) {
+            return old;
+        }
+        now._id = Utils.sha1(file);
+        now._fresh = true;
+        return now;
+    }
+
+    /** Returns a map from each of the working files NAMES in directory DIR
+     *  that exists to its blob id.  Files are checked and, where their stat
+     *  data changed, hashed in parallel on the WorkTree pool. */
+    TreeMap<String, String> ids(File dir, Collection<String> names) {
+        List<String> all = new ArrayList<String>(names);
+        List<Entry> found = WorkTree.map(all, name -> lookup(dir, name));
+        TreeMap<String, String> result = new TreeMap<String, String>();
+        for (int i = 0; i < all.size(); i += 1) {
+            Entry entry = found.get(i);
+            if (entry != null) {
+                if (entry != _entries.get(all.get(i))) {
+                    _entries.put(all.get(i), entry);
+                    _changed = true;
+                }
+                result.put(all.get(i), entry._id);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the blob id of working file NAME in directory DIR, hashing
+     *  it only if its stat data has changed since it was last hashed.
+     *  Returns null if there is no such file. */
+    String id(File dir, String name) {
+        Entry entry = lookup(dir, name);
+        if (entry == null) {
+            return null;
+        }
+        if (entry != _entries.get(name)) {
+            _entries.put(name, entry);
+            _changed = true;
+        }
+        return entry._id;
+    }
+
+    /** Records that working file NAME in directory DIR now holds the
+     *  contents of blob ID, as after a checkout. */
+    void record(File dir, String name, String id) {
+        Entry now = stat(new File(dir, name));
+        if (now == null) {
+            forget(name);
+        } else {
+            now._id = id;
+            now._fresh = true;
+            _entries.put(name, now);
+            _changed = true;
+        }
+    }
+
+    /** Drops any entry for working file NAME. */
+    void forget(String name) {
+        if (_entries.remove(name) != null) {
+            _changed = true;
+        }
+    }
+}
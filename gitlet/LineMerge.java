@@ -0,0 +1,95 @@
+package gitlet;
+
+import java.util.List;
+
+/** A three-way merge of the lines of two texts descended from a common
+ *  base, in the manner of diff3.  Each side is matched against the base
+ *  with Diff; base lines matched on both sides, at the same places, are
+ *  stable, and the runs between them are chunks changed on one side or
+ *  both.  A chunk changed on one side only, or identically on both,
+ *  takes that change; any other chunk is a conflict, and only that chunk
+ *  is written between conflict markers:
+ *
+ *      <<<<<<< HEAD
+ *      lines of the current side
+ *      =======
+ *      lines of the given side
+ *      >>>>>>>
+ *
+ *  @author Ashvin Dhawan
+ */
+class LineMerge {
+
+    /** The merged text, with conflict markers. */
+    private final StringBuilder _out = new StringBuilder();
+    /** Number of conflicting chunks in _out. */
+    private int _conflicts;
+
+    /** Merges OURS and THEIRS, both descended from BASE. */
+    LineMerge(String base, String ours, String theirs) {
+        List<String> b = Diff.lines(base), o = Diff.lines(ours),
+            t = Diff.lines(theirs);
+        int[] toOurs = Diff.match(b, o), toTheirs = Diff.match(b, t);
+        int ib = 0, io = 0, it = 0;
+        while (ib < b.size() || io < o.size() || it < t.size()) {
+            int sb = ib;
+            while (sb < b.size() && (toOurs[sb] == Diff.NONE
+                                     || toTheirs[sb] == Diff.NONE)) {
+                sb += 1;
+            }
+            int so = sb < b.size() ? toOurs[sb] : o.size(),
+                st = sb < b.size() ? toTheirs[sb] : t.size();
+            if (sb == ib && so == io && st == it) {
+                _out.append(b.get(ib));
+                ib += 1;
+                io += 1;
+                it += 1;
+                continue;
+            }
+            chunk(b.subList(ib, sb), o.subList(io, so), t.subList(it, st));
+            ib = sb;
+            io = so;
+            it = st;
+        }
+    }
+
+    /** Appends the merge of the chunk BASE, changed to OURS on the current
+     *  side and to THEIRS on the given side. */
+    private void chunk(List<String> base, List<String> ours,
+                       List<String> theirs) {
+        if (ours.equals(base) || ours.equals(theirs)) {
+            append(theirs, false);
+        } else if (theirs.equals(base)) {
+            append(ours, false);
+        } else {
+            _conflicts += 1;
+            _out.append("<<<<<<< HEAD\n");
+            append(ours, true);
+            _out.append("=======\n");
+            append(theirs, true);
+            _out.append(">>>>>>>\n");
+        }
+    }
+
+    /** Appends LINES, ending the last with a newline if it lacks one and
+     *  MARKED, since a conflict marker follows it. */
+    private void append(List<String> lines, boolean marked) {
+        for (String line : lines) {
+            _out.append(line);
+        }
+        if (marked && _out.length() > 0
+                && _out.charAt(_out.length() - 1) != '\n') {
+            _out.append('\n');
+        }
+    }
+
+    /** Returns the merged text. */
+    String text() {
+        return _out.toString();
+    }
+
+    /** Returns the number of conflicting chunks. */
+    int conflicts() {
+        return _conflicts;
+    }
+}
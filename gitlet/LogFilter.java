@@ -0,0 +1,83 @@
+package gitlet;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/** The options of log and global-log: "-n N" shows at most N commits, and
+ *  "--since=DATE" and "--until=DATE" show only commits made in that range.
+ *  A DATE is yyyy-MM-dd or yyyy-MM-ddTHH:mm:ss in the time zone in which
+ *  commit dates are shown; a bare day starts at midnight for --since and
+ *  runs to the end of the day for --until.  All are checked on the times
+ *  held in the commit graph, so commits that are filtered out are never
+ *  read.
+ *  @author Ashvin Dhawan
+ */
+class LogFilter {
+
+    /** Largest number of commits to show. */
+    private int _limit = Integer.MAX_VALUE;
+    /** Earliest time of a commit shown, in milliseconds. */
+    private long _since = Long.MIN_VALUE;
+    /** Latest time of a commit shown, in milliseconds. */
+    private long _until = Long.MAX_VALUE;
+
+    /** Returns the filter given by OPERANDS.  Throws GitletException if
+     *  they are not valid options. */
+    static LogFilter parse(List<String> operands) {
+        LogFilter result = new LogFilter();
+        try {
+            for (int i = 0; i < operands.size(); i += 1) {
+                String option = operands.get(i);
+                if (option.equals("-n") && i + 1 < operands.size()) {
+                    i += 1;
+                    result._limit = Integer.parseInt(operands.get(i));
+                    if (result._limit < 0) {
+                        throw new NumberFormatException();
+                    }
+                } else if (option.startsWith("--since=")) {
+                    result._since = time(option.substring(8), false);
+                } else if (option.startsWith("--until=")) {
+                    result._until = time(option.substring(8), true);
+                } else {
+                    throw new GitletException("Incorrect operands.");
+                }
+            }
+        } catch (NumberFormatException | DateTimeParseException excp) {
+            throw new GitletException("Incorrect operands.");
+        }
+        return result;
+    }
+
+    /** Returns the time in milliseconds of the date DATE, taken to be the
+     *  last millisecond of a bare day if END and its first otherwise. */
+    private static long time(String date, boolean end) {
+        if (date.indexOf('T') < 0) {
+            LocalDate day = LocalDate.parse(date);
+            if (end) {
+                return day.plusDays(1).atStartOfDay(Commit.ZONE)
+                    .toInstant().toEpochMilli() - 1;
+            }
+            return day.atStartOfDay(Commit.ZONE).toInstant().toEpochMilli();
+        }
+        return LocalDateTime.parse(date).atZone(Commit.ZONE).toInstant()
+            .toEpochMilli();
+    }
+
+    /** Returns the largest number of commits to show. */
+    int limit() {
+        return _limit;
+    }
+
+    /** Returns true iff a commit made at TIME is to be shown. */
+    boolean accepts(long time) {
+        return _since <= time && time <= _until;
+    }
+
+    /** Returns true iff a commit made at TIME is older than every commit
+     *  to be shown. */
+    boolean before(long time) {
+        return time < _since;
+    }
+}
@@ -14,17 +14,42 @@ public class Main {
     /** Usage: java gitlet.Main ARGS, where ARGS contains
      *  <COMMAND> <OPERAND> .... */
     public static void main(String... args) throws IOException {
-        ArrayList<String> arguments = new ArrayList<>();
         if (args == null || args.length == 0) {
             System.out.println("Please enter a command.");
             System.exit(0);
         }
+        if (args[0].equals("daemon")) {
+            ArrayList<String> operands = new ArrayList<>();
+            for (int i = 1; i < args.length; i++) {
+                operands.add(args[i]);
+            }
+            try {
+                Daemon.main(operands.toArray(new String[0]));
+            } catch (GitletException excp) {
+                System.out.println(excp.getMessage());
+            }
+        } else if (!Daemon.forward(args)) {
+            execute(new Gitlet(), args);
+        }
+    }
+
+    /** Runs the command ARGS on GITLET, printing the message of any
+     *  GitletException it raises. */
+    static void execute(Gitlet gitlet, String... args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Please enter a command.");
+            return;
+        }
         String operator = args[0];
+        ArrayList<String> arguments = new ArrayList<>();
         for (int i = 1; i < args.length; i++) {
             arguments.add(args[i]);
         }
-        Gitlet gitlet = new Gitlet();
-        gitlet.execute(operator, arguments);
+        try {
+            gitlet.execute(operator, arguments);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        }
     }
 
 }
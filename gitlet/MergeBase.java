@@ -0,0 +1,96 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/** Lowest common ancestors in a CommitGraph.  Both commits are walked at
+ *  once, newest generation first, marking every commit with the sides it
+ *  is reachable from.  A commit reached from both sides is a merge base,
+ *  and everything below it is marked stale; the walk ends when only stale
+ *  commits remain, so it never goes further back than the merge bases
+ *  themselves.  Since every child has a higher generation than its
+ *  parents, a common ancestor below a merge base is always marked stale
+ *  before it is reached.  All parents are followed, so criss-cross
+ *  histories yield every merge base rather than an arbitrary one.
+ *  @author Ashvin Dhawan
+ */
+class MergeBase {
+
+    /** Marks commits reachable from the first commit. */
+    private static final int FROM_A = 1;
+    /** Marks commits reachable from the second commit. */
+    private static final int FROM_B = 2;
+    /** Marks commits reachable from both commits. */
+    private static final int BOTH = FROM_A | FROM_B;
+    /** Marks commits below a common ancestor. */
+    private static final int STALE = 4;
+    /** Marks commits already taken as merge bases. */
+    private static final int RESULT = 8;
+
+    /** Returns the merge bases of commits A and B in GRAPH: the common
+     *  ancestors of both that are not ancestors of another common
+     *  ancestor.  They are listed by decreasing generation and then time,
+     *  so the first is the most recent. */
+    static List<Integer> bases(CommitGraph graph, int a, int b) {
+        ArrayList<Integer> result = new ArrayList<Integer>();
+        if (a == b) {
+            result.add(a);
+            return result;
+        }
+        HashMap<Integer, Integer> flags = new HashMap<Integer, Integer>();
+        PriorityQueue<Integer> queue = new PriorityQueue<Integer>(
+                order(graph));
+        flags.put(a, FROM_A);
+        flags.put(b, FROM_B);
+        queue.add(a);
+        queue.add(b);
+        while (hasActive(queue, flags)) {
+            int k = queue.poll();
+            int mark = flags.get(k) & (BOTH | STALE);
+            if (mark == BOTH) {
+                if ((flags.get(k) & RESULT) == 0) {
+                    flags.put(k, flags.get(k) | RESULT);
+                    result.add(k);
+                }
+                mark |= STALE;
+            }
+            for (int which = 0; which < 2; which += 1) {
+                int p = graph.parent(k, which);
+                if (p == CommitGraph.NONE) {
+                    continue;
+                }
+                int old = flags.getOrDefault(p, 0);
+                if ((old & mark) != mark) {
+                    flags.put(p, old | mark);
+                    queue.add(p);
+                }
+            }
+        }
+        result.sort(order(graph));
+        return result;
+    }
+
+    /** Returns true iff some commit in QUEUE is not marked STALE in
+     *  FLAGS. */
+    private static boolean hasActive(PriorityQueue<Integer> queue,
+                                     HashMap<Integer, Integer> flags) {
+        for (int k : queue) {
+            if ((flags.get(k) & STALE) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the order of the commits of GRAPH by decreasing generation
+     *  and then decreasing time. */
+    private static Comparator<Integer> order(CommitGraph graph) {
+        Comparator<Integer> byGeneration =
+            Comparator.comparingInt(graph::generation);
+        Comparator<Integer> byTime = Comparator.comparingLong(graph::time);
+        return byGeneration.thenComparing(byTime).reversed();
+    }
+}
@@ -0,0 +1,121 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A least-recently-used cache of values of type V, bounded by the total
+ *  of their estimated sizes in bytes rather than by their number, so that
+ *  a long walk over large objects stays within a fixed budget however
+ *  many it touches.  It counts its hits and misses for tuning.  All
+ *  methods are synchronized.
+ *  @author Ashvin Dhawan
+ */
+class ObjectCache<V> {
+
+    /** Name of the system property giving the budget of each cache. */
+    static final String BYTES_PROPERTY = "gitlet.cacheBytes";
+    /** Budget of each cache when BYTES_PROPERTY is not set. */
+    static final long DEFAULT_BYTES = 1L << 25;
+    /** Name of the system property that, when "true", causes the cache
+     *  counters to be reported after every command. */
+    static final String STATS_PROPERTY = "gitlet.cacheStats";
+
+    /** A cached value and its estimated size. */
+    private static class Entry<V> {
+        /** The value. */
+        private final V _value;
+        /** Estimated size of _value in bytes. */
+        private final long _bytes;
+
+        /** An entry for VALUE, of size BYTES. */
+        Entry(V value, long bytes) {
+            _value = value;
+            _bytes = bytes;
+        }
+    }
+
+    /** Description of this cache in reports. */
+    private final String _name;
+    /** Largest total size of the values kept. */
+    private final long _limit;
+    /** The entries, least recently used first. */
+    private final LinkedHashMap<String, Entry<V>> _entries =
+        new LinkedHashMap<String, Entry<V>>(16, 0.75f, true);
+    /** Total size of the values in _entries. */
+    private long _bytes;
+    /** Number of lookups that found their value. */
+    private long _hits;
+    /** Number of lookups that did not. */
+    private long _misses;
+
+    /** An empty cache called NAME holding at most LIMIT bytes. */
+    ObjectCache(String name, long limit) {
+        _name = name;
+        _limit = limit;
+    }
+
+    /** An empty cache called NAME whose budget is given by BYTES_PROPERTY,
+     *  or DEFAULT_BYTES. */
+    ObjectCache(String name) {
+        this(name, Long.getLong(BYTES_PROPERTY, DEFAULT_BYTES));
+    }
+
+    /** Returns true iff cache counters are to be reported. */
+    static boolean reporting() {
+        return Boolean.getBoolean(STATS_PROPERTY);
+    }
+
+    /** Returns the value cached under KEY, or null if there is none. */
+    synchronized V get(String key) {
+        Entry<V> entry = _entries.get(key);
+        if (entry == null) {
+            _misses += 1;
+            return null;
+        }
+        _hits += 1;
+        return entry._value;
+    }
+
+    /** Caches VALUE, whose estimated size is BYTES, under KEY, and drops
+     *  the least recently used values until the total is within budget.
+     *  A value larger than the whole budget is not kept. */
+    synchronized void put(String key, V value, long bytes) {
+        if (bytes > _limit) {
+            return;
+        }
+        Entry<V> old = _entries.put(key, new Entry<V>(value, bytes));
+        if (old != null) {
+            _bytes -= old._bytes;
+        }
+        _bytes += bytes;
+        Iterator<Map.Entry<String, Entry<V>>> oldest =
+            _entries.entrySet().iterator();
+        while (_bytes > _limit && oldest.hasNext()) {
+            _bytes -= oldest.next().getValue()._bytes;
+            oldest.remove();
+        }
+    }
+
+    /** Returns the number of lookups that found their value. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Returns the number of lookups that did not find their value. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** Returns the total estimated size of the cached values. */
+    synchronized long bytes() {
+        return _bytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s cache: %d hits, %d misses, %d entries,"
+                + " %d of %d bytes", _name, _hits, _misses, _entries.size(),
+                _bytes, _limit);
+    }
+}
@@ -0,0 +1,493 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/** Content-addressed store for the Commits and Blobs of a repository.
+ *  An object whose SHA-1 id is XXYYYY... lives in the file
+ *  .gitlet/objects/XX/YYYY..., is written once, and is read back only
+ *  when a command actually needs it.  Commits and trees are kept in
+ *  their Encoding; blobs are kept as the contents of the file they were
+ *  made from.  Each object file holds the id byte of a Codec followed by
+ *  the object as that codec compressed it, and is decompressed lazily as
+ *  it is read.  Objects may
+ *  also be gathered into PackFiles under .gitlet/pack by repack(); every
+ *  lookup checks the loose objects first and then the packs.
+ *  @author Ashvin Dhawan
+ */
+class ObjectStore {
+
+    /** Number of leading id characters used as the fan-out directory. */
+    static final int FANOUT = 2;
+    /** Longest chain of deltas that repack() will build. */
+    static final int MAX_DELTA_DEPTH = 10;
+    /** Objects larger than this are never stored as deltas. */
+    static final long MAX_DELTA_OBJECT_BYTES = 1L << 24;
+    /** Estimated heap bytes of a decoded object beyond three times its
+     *  encoded length (ids take 20 bytes encoded but 40 characters and a
+     *  String header decoded). */
+    static final long OBJECT_OVERHEAD = 64;
+
+    /** Directory holding all loose objects. */
+    private final File _dir;
+    /** Directory holding all packs. */
+    private final File _packDir;
+    /** The packs of this store, once they have been opened. */
+    private List<PackFile> _packs;
+    /** Recently decoded commits and trees. */
+    private final ObjectCache<Object> _objectCache =
+        new ObjectCache<Object>("object");
+    /** Contents of recently rebuilt delta objects. */
+    private final ObjectCache<byte[]> _deltaCache =
+        new ObjectCache<byte[]>("delta");
+    /** Codec used for newly written objects. */
+    private final Codec _codec;
+
+    /** A store rooted at the objects directory of repository GITLETDIR. */
+    ObjectStore(File gitletDir) {
+        _dir = Utils.join(gitletDir, "objects");
+        _packDir = Utils.join(gitletDir, "pack");
+        _codec = Codec.configured();
+    }
+
+    /** Creates the on-disk directory of this store if it is missing. */
+    void create() {
+        _dir.mkdirs();
+    }
+
+    /** Returns the file in which object ID is (or would be) kept. */
+    File file(String id) {
+        return Utils.join(_dir, id.substring(0, FANOUT),
+                id.substring(FANOUT));
+    }
+
+    /** Returns true iff an object with id ID has been stored. */
+    boolean contains(String id) {
+        return isLoose(id) || pack(id) != null;
+    }
+
+    /** Returns true iff object ID is stored as a loose object. */
+    private boolean isLoose(String id) {
+        return id != null && id.length() > FANOUT && file(id).isFile();
+    }
+
+    /** Returns the packs of this store, opening them on first use. */
+    synchronized List<PackFile> packs() {
+        if (_packs == null) {
+            _packs = new ArrayList<PackFile>();
+            File[] indices = _packDir.listFiles(
+                (dir, name) -> name.endsWith(".idx"));
+            if (indices != null) {
+                for (File index : indices) {
+                    _packs.add(new PackFile(index));
+                }
+            }
+        }
+        return _packs;
+    }
+
+    /** Returns the pack holding object ID, or null if there is none. */
+    private PackFile pack(String id) {
+        if (id == null || id.length() != Utils.UID_LENGTH) {
+            return null;
+        }
+        for (PackFile pack : packs()) {
+            if (pack.contains(id)) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    /** Stores the encoded object CONTENTS under ID.  Objects are
+     *  immutable, so nothing is written when ID is already present. */
+    void put(String id, byte[] contents) {
+        write(id, out -> out.write(contents));
+    }
+
+    /** Stores the contents of BLOB under its id by streaming them from
+     *  its file, unless they are already present.  The contents are
+     *  hashed as they are copied, and nothing is stored if they no longer
+     *  match the id: the file changed after it was hashed. */
+    void putBlob(Blob blob) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+        write(blob.sha(), out -> {
+            Files.copy(blob.file().toPath(),
+                    new DigestOutputStream(out, digest));
+            if (!Utils.toHex(digest.digest()).equals(blob.sha())) {
+                throw new GitletException("File " + blob.name()
+                        + " changed while it was being added.");
+            }
+        });
+    }
+
+    /** Returns the blob stored under ID, or null if ID is null or
+     *  unknown.  Its contents are not read until they are asked for. */
+    Blob getBlob(String id) {
+        if (!contains(id)) {
+            return null;
+        }
+        return new Blob(id, this);
+    }
+
+    /** Returns the object stored under ID as DECODER rebuilds it, or
+     *  null if ID is null or unknown.  Recently used objects are returned
+     *  from a cache, so they must not be modified; every object stored
+     *  under ID must be rebuilt by the same DECODER. */
+    @SuppressWarnings("unchecked")
+    <T> T get(String id, Encoding.Decoder<T> decoder) {
+        Object cached = id == null ? null : _objectCache.get(id);
+        if (cached != null) {
+            return (T) cached;
+        }
+        if (!contains(id)) {
+            return null;
+        }
+        byte[] contents = read(id);
+        T result = decoder.decode(contents);
+        _objectCache.put(id, result, OBJECT_OVERHEAD + 3L * contents.length);
+        return result;
+    }
+
+    /** Returns the caches of this store. */
+    List<ObjectCache<?>> caches() {
+        return List.of(_objectCache, _deltaCache);
+    }
+
+    /** Returns the uncompressed contents of object ID. */
+    byte[] read(String id) {
+        PackFile pack = isLoose(id) ? null : pack(id);
+        String base = pack == null ? null : pack.baseId(id);
+        if (base != null) {
+            return readDelta(pack, id, base);
+        }
+        try (InputStream in = open(id)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the contents of object ID, stored in PACK as a delta from
+     *  object BASE, reusing recently rebuilt objects where possible. */
+    private byte[] readDelta(PackFile pack, String id, String base) {
+        byte[] result = _deltaCache.get(id);
+        if (result != null) {
+            return result;
+        }
+        try (InputStream in = pack.open(id)) {
+            result = Delta.apply(read(base), in.readAllBytes());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _deltaCache.put(id, result, result.length);
+        return result;
+    }
+
+    /** Returns a stream over the uncompressed contents of object ID, which
+     *  are decompressed only as the stream is read. */
+    InputStream open(String id) throws IOException {
+        if (!isLoose(id)) {
+            PackFile pack = pack(id);
+            if (pack == null) {
+                throw new IOException("no object " + id);
+            } else if (pack.baseId(id) != null) {
+                return new ByteArrayInputStream(read(id));
+            }
+            return pack.open(id);
+        }
+        InputStream in = new BufferedInputStream(
+                new FileInputStream(file(id)), Utils.BUFFER_SIZE);
+        int codec = in.read();
+        if (codec == -1) {
+            in.close();
+            throw new IOException("empty object " + id);
+        }
+        return Codec.forId(codec).decompress(in);
+    }
+
+    /** Writes the uncompressed contents of object ID to FILE, replacing
+     *  whatever it held, using a fixed amount of heap however large the
+     *  object is.  An uncompressed loose object is copied by the file
+     *  system with FileChannel.transferTo, and an uncompressed packed one
+     *  is written straight from the mapped pack; other objects are
+     *  decompressed as they are written.  Only a delta, which is never
+     *  larger than MAX_DELTA_OBJECT_BYTES, is rebuilt in memory first.
+     *  The object is found and opened before FILE is touched, so FILE is
+     *  left as it was if there is no object ID. */
+    void copyTo(String id, File file) throws IOException {
+        if (isLoose(id)) {
+            try (FileChannel in = FileChannel.open(file(id).toPath())) {
+                ByteBuffer codec = ByteBuffer.allocate(1);
+                if (in.read(codec, 0) == 1
+                        && codec.get(0) == Codec.IDENTITY.id()) {
+                    try (FileChannel out = replace(file)) {
+                        long size = in.size();
+                        for (long pos = 1; pos < size;) {
+                            pos += in.transferTo(pos, size - pos, out);
+                        }
+                    }
+                    return;
+                }
+            }
+        } else {
+            PackFile pack = pack(id);
+            if (pack != null && pack.baseId(id) == null) {
+                ByteBuffer body = pack.body(id);
+                if (body.get() == Codec.IDENTITY.id()) {
+                    try (FileChannel out = replace(file)) {
+                        while (body.hasRemaining()) {
+                            out.write(body);
+                        }
+                    }
+                    return;
+                }
+            }
+        }
+        try (InputStream in = open(id); FileChannel out = replace(file)) {
+            in.transferTo(Channels.newOutputStream(out));
+        }
+    }
+
+    /** Returns a channel writing FILE from its start, which is created if
+     *  need be and emptied otherwise. */
+    private static FileChannel replace(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /** Returns the ids of all loose objects. */
+    private List<String> looseIds() {
+        ArrayList<String> result = new ArrayList<String>();
+        File[] fanouts = _dir.listFiles(File::isDirectory);
+        if (fanouts == null) {
+            return result;
+        }
+        for (File fanout : fanouts) {
+            for (String name : Utils.plainFilenamesIn(fanout)) {
+                String id = fanout.getName() + name;
+                if (id.length() == Utils.UID_LENGTH
+                        && id.matches("[0-9a-f]+")) {
+                    result.add(id);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Gathers every loose object that is not too large, together with
+     *  all existing packs, into new packs, and then removes the loose
+     *  objects and old packs that were gathered.  DELTABASES maps blob ids,
+     *  in the order in which they first appeared, to the id of a similar
+     *  earlier blob (or null); each blob is stored as a delta from its
+     *  entry where that saves space and keeps chains of deltas no longer
+     *  than MAX_DELTA_DEPTH. */
+    void repack(Map<String, String> deltaBases) {
+        TreeSet<String> ids = new TreeSet<String>();
+        for (String id : looseIds()) {
+            if (file(id).length() <= PackFile.MAX_PACKED_OBJECT_BYTES) {
+                ids.add(id);
+            }
+        }
+        List<PackFile> old = packs();
+        for (PackFile pack : old) {
+            ids.addAll(pack.ids());
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+        HashMap<String, String> bases = new HashMap<String, String>();
+        HashMap<String, Integer> depths = new HashMap<String, Integer>();
+        for (Map.Entry<String, String> entry : deltaBases.entrySet()) {
+            String id = entry.getKey(), base = entry.getValue();
+            int depth = 0;
+            if (base != null && ids.contains(id) && contains(base)
+                    && depths.getOrDefault(base, 0) < MAX_DELTA_DEPTH
+                    && size(id) <= MAX_DELTA_OBJECT_BYTES
+                    && size(base) <= MAX_DELTA_OBJECT_BYTES) {
+                bases.put(id, base);
+                depth = depths.getOrDefault(base, 0) + 1;
+            }
+            depths.putIfAbsent(id, depth);
+        }
+        try {
+            List<PackFile> fresh = PackFile.write(_packDir,
+                    new ArrayList<String>(ids), new RepackSource(bases));
+            HashSet<File> kept = new HashSet<File>();
+            for (PackFile pack : fresh) {
+                kept.add(pack.packFile());
+                kept.add(pack.indexFile());
+            }
+            for (PackFile pack : old) {
+                if (!kept.contains(pack.indexFile())) {
+                    Files.deleteIfExists(pack.indexFile().toPath());
+                    Files.deleteIfExists(pack.packFile().toPath());
+                }
+            }
+            _packs = fresh;
+            for (String id : ids) {
+                File loose = file(id);
+                if (loose.delete()) {
+                    loose.getParentFile().delete();
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns an estimate of the stored size of object ID. */
+    private long size(String id) {
+        if (isLoose(id)) {
+            return file(id).length();
+        }
+        return pack(id).body(id).remaining();
+    }
+
+    /** Returns CONTENTS as the body of an object: the id byte of this
+     *  store's codec followed by CONTENTS as that codec compresses them. */
+    private byte[] compress(byte[] contents) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(_codec.id());
+        try (OutputStream compressed = _codec.compress(out)) {
+            compressed.write(contents);
+        }
+        return out.toByteArray();
+    }
+
+    /** The objects of this store as seen by PackFile.write during a
+     *  repack.  Objects that are currently deltas are handed over whole,
+     *  so that the new packs never depend on the old ones. */
+    private class RepackSource implements PackFile.Source {
+
+        /** Delta bases for the objects being packed. */
+        private final Map<String, String> _bases;
+        /** Id of the last delta object rebuilt by openBody or bodySize. */
+        private String _lastId;
+        /** Whole body of the object _lastId. */
+        private byte[] _lastBody;
+
+        /** A source that suggests the delta bases BASES. */
+        RepackSource(Map<String, String> bases) {
+            _bases = bases;
+        }
+
+        /** Returns the whole body of object ID, which is stored in PACK as
+         *  a delta. */
+        private byte[] wholeBody(String id) throws IOException {
+            if (!id.equals(_lastId)) {
+                _lastBody = compress(read(id));
+                _lastId = id;
+            }
+            return _lastBody;
+        }
+
+        @Override
+        public long bodySize(String id) {
+            if (isLoose(id)) {
+                return file(id).length();
+            }
+            PackFile pack = pack(id);
+            if (pack.baseId(id) == null) {
+                return pack.body(id).remaining();
+            }
+            try {
+                return wholeBody(id).length;
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        @Override
+        public InputStream openBody(String id) throws IOException {
+            if (isLoose(id)) {
+                return new FileInputStream(file(id));
+            }
+            PackFile pack = pack(id);
+            if (pack.baseId(id) != null) {
+                return new ByteArrayInputStream(wholeBody(id));
+            }
+            return new PackFile.BufferInputStream(pack.body(id));
+        }
+
+        @Override
+        public String deltaBase(String id) {
+            return _bases.get(id);
+        }
+
+        @Override
+        public byte[] read(String id) {
+            return ObjectStore.this.read(id);
+        }
+
+        @Override
+        public byte[] compress(byte[] contents) throws IOException {
+            return ObjectStore.this.compress(contents);
+        }
+    }
+
+    /** Source of the contents of an object being written. */
+    private interface Contents {
+        /** Writes the uncompressed contents of an object to OUT. */
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /** Writes the object with id ID, whose uncompressed contents CONTENTS
+     *  produces, unless it is already present, loose or packed.  The
+     *  object goes through a temporary file so that a partial object is
+     *  never visible; if CONTENTS throws, the temporary file is
+     *  removed. */
+    private void write(String id, Contents contents) {
+        if (contains(id)) {
+            return;
+        }
+        File target = file(id);
+        target.getParentFile().mkdirs();
+        try {
+            File temp = File.createTempFile("obj", null,
+                    target.getParentFile());
+            try {
+                try (OutputStream out = new FileOutputStream(temp)) {
+                    out.write(_codec.id());
+                    OutputStream compressed = _codec.compress(out);
+                    contents.writeTo(compressed);
+                    compressed.close();
+                }
+                Files.move(temp.toPath(), target.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                temp.delete();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A pack: many objects of the object store kept in one file, together
+ *  with an index of their ids.  Both files are memory-mapped, so finding
+ *  an object is a binary search over the index and reading it is a single
+ *  seek into the pack.
+ *
+ *  The pack file pack-NAME.pack holds the header "GPCK", a version and an
+ *  object count, followed by one entry per object: a kind byte, the length
+ *  of the body as a long, for DELTA entries the 20-byte id of the base
+ *  object, and the body, which has exactly the form of a loose object file
+ *  (a codec id byte and the compressed object).  The body of a DELTA entry
+ *  is a compressed Delta that rebuilds the object from its base.
+ *
+ *  The index pack-NAME.idx holds the header "GIDX", a version and the
+ *  object count, a fan-out table of 256 ints giving for each first id
+ *  byte B the number of ids whose first byte is at most B, the sorted
+ *  20-byte ids, and the offset of each id's entry in the pack as a long.
+ *  @author Ashvin Dhawan
+ */
+class PackFile {
+
+    /** Magic number starting every pack file. */
+    static final int PACK_MAGIC = 0x4750434b;
+    /** Magic number starting every index file. */
+    static final int INDEX_MAGIC = 0x47494458;
+    /** Version of the pack and index formats written here. */
+    static final int VERSION = 1;
+    /** Kind byte of an entry holding an object as a whole. */
+    static final int WHOLE = 0;
+    /** Kind byte of an entry holding an object as a delta from a base. */
+    static final int DELTA = 1;
+    /** Number of entries in the fan-out table. */
+    static final int FANOUT_SIZE = 256;
+    /** Length of the pack and index headers in bytes. */
+    static final int HEADER_BYTES = 12;
+    /** Length of the kind and body length that start each entry. */
+    static final int ENTRY_HEADER_BYTES = 9;
+    /** Largest pack that can be mapped as a single buffer. */
+    static final long MAX_PACK_BYTES = Integer.MAX_VALUE;
+    /** Objects whose bodies are larger than this stay loose. */
+    static final long MAX_PACKED_OBJECT_BYTES = 1L << 28;
+
+    /** The pack file. */
+    private final File _packFile;
+    /** The index file. */
+    private final File _indexFile;
+    /** Mapped contents of the pack file. */
+    private final MappedByteBuffer _pack;
+    /** Mapped contents of the index file. */
+    private final MappedByteBuffer _index;
+    /** Number of objects in this pack. */
+    private final int _count;
+
+    /** The pack described by index file INDEXFILE.  Throws
+     *  IllegalArgumentException if either file is missing or damaged. */
+    PackFile(File indexFile) {
+        _indexFile = indexFile;
+        String name = indexFile.getName();
+        _packFile = new File(indexFile.getParentFile(),
+                name.substring(0, name.length() - ".idx".length()) + ".pack");
+        _index = map(_indexFile);
+        _pack = map(_packFile);
+        if (_index.getInt(0) != INDEX_MAGIC
+                || _pack.getInt(0) != PACK_MAGIC
+                || _index.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("bad pack " + name);
+        }
+        _count = _index.getInt(8);
+    }
+
+    /** Returns FILE mapped read-only into memory. */
+    private static MappedByteBuffer map(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Accessor method, returns the pack file. */
+    File packFile() {
+        return _packFile;
+    }
+
+    /** Accessor method, returns the index file. */
+    File indexFile() {
+        return _indexFile;
+    }
+
+    /** Returns the number of objects in this pack. */
+    int size() {
+        return _count;
+    }
+
+    /** Returns the position in the index of the first id byte. */
+    private int idsStart() {
+        return HEADER_BYTES + FANOUT_SIZE * 4;
+    }
+
+    /** Returns the position in the index of the first entry offset. */
+    private int offsetsStart() {
+        return idsStart() + _count * Utils.ID_BYTES;
+    }
+
+    /** Returns the number of ids whose first byte is below B. */
+    private int fanout(int b) {
+        return b == 0 ? 0 : _index.getInt(HEADER_BYTES + (b - 1) * 4);
+    }
+
+    /** Returns the K-th smallest id in this pack. */
+    String id(int k) {
+        byte[] id = new byte[Utils.ID_BYTES];
+        _index.get(idsStart() + k * Utils.ID_BYTES, id);
+        return Utils.toHex(id);
+    }
+
+    /** Returns the ids of all objects in this pack, in sorted order. */
+    List<String> ids() {
+        ArrayList<String> result = new ArrayList<String>(_count);
+        for (int k = 0; k < _count; k += 1) {
+            result.add(id(k));
+        }
+        return result;
+    }
+
+    /** Returns the index position of object ID, or -1 if it is not in
+     *  this pack. */
+    int find(String id) {
+        if (id == null || id.length() != Utils.UID_LENGTH) {
+            return -1;
+        }
+        byte[] key = Utils.fromHex(id);
+        int first = key[0] & 0xff;
+        int lo = fanout(first), hi = fanout(first + 1) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compare(mid, key);
+            if (cmp == 0) {
+                return mid;
+            } else if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    /** Compares the K-th id of the index with KEY, unsigned bytewise. */
+    private int compare(int k, byte[] key) {
+        int base = idsStart() + k * Utils.ID_BYTES;
+        for (int i = 0; i < Utils.ID_BYTES; i += 1) {
+            int c = (_index.get(base + i) & 0xff) - (key[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Returns true iff object ID is in this pack. */
+    boolean contains(String id) {
+        return find(id) >= 0;
+    }
+
+    /** Returns the offset in the pack of the entry at index position K. */
+    private int offset(int k) {
+        return (int) _index.getLong(offsetsStart() + k * 8);
+    }
+
+    /** Returns the id of the base of object ID if it is stored here as a
+     *  delta, and otherwise null. */
+    String baseId(String id) {
+        int k = find(id);
+        if (k < 0 || _pack.get(offset(k)) != DELTA) {
+            return null;
+        }
+        byte[] base = new byte[Utils.ID_BYTES];
+        _pack.get(offset(k) + ENTRY_HEADER_BYTES, base);
+        return Utils.toHex(base);
+    }
+
+    /** Returns the body of the entry of object ID (a codec byte followed
+     *  by the compressed object or delta) as a view of the mapped pack, or
+     *  null if ID is not in this pack. */
+    ByteBuffer body(String id) {
+        int k = find(id);
+        if (k < 0) {
+            return null;
+        }
+        int offset = offset(k);
+        long length = _pack.getLong(offset + 1);
+        int start = offset + ENTRY_HEADER_BYTES;
+        if (_pack.get(offset) == DELTA) {
+            start += Utils.ID_BYTES;
+        }
+        return _pack.slice(start, (int) length);
+    }
+
+    /** Returns a stream over the uncompressed body of object ID: its
+     *  contents for a whole entry, or its Delta for a delta entry.  Returns
+     *  null if ID is not in this pack. */
+    InputStream open(String id) throws IOException {
+        ByteBuffer body = body(id);
+        if (body == null) {
+            return null;
+        }
+        int codec = body.get() & 0xff;
+        return Codec.forId(codec).decompress(new BufferInputStream(body));
+    }
+
+    /** Source of the objects being packed. */
+    interface Source {
+        /** Returns the length of the body of object ID. */
+        long bodySize(String id);
+
+        /** Returns a stream over the body of object ID, a codec byte
+         *  followed by the compressed object. */
+        InputStream openBody(String id) throws IOException;
+
+        /** Returns the id of the object from which object ID should be
+         *  stored as a delta, or null if it should be stored whole. */
+        String deltaBase(String id);
+
+        /** Returns the uncompressed contents of object ID. */
+        byte[] read(String id);
+
+        /** Returns CONTENTS compressed into a body, a codec byte followed
+         *  by the compressed bytes. */
+        byte[] compress(byte[] contents) throws IOException;
+    }
+
+    /** Writes the objects IDS, whose bodies SOURCE supplies, into new packs
+     *  in directory DIR, starting a new pack whenever one would outgrow
+     *  MAX_PACK_BYTES.  An object with a delta base is stored as a delta
+     *  whenever that is smaller than storing it whole.  IDS must be
+     *  sorted, and no body may be larger than MAX_PACKED_OBJECT_BYTES.
+     *  Returns the new packs. */
+    static List<PackFile> write(File dir, List<String> ids, Source source)
+        throws IOException {
+        dir.mkdirs();
+        ArrayList<PackFile> result = new ArrayList<PackFile>();
+        int start = 0;
+        while (start < ids.size()) {
+            File temp = File.createTempFile("pack", null, dir);
+            ArrayList<Long> offsets = new ArrayList<Long>();
+            try (FileChannel out = FileChannel.open(temp.toPath(),
+                    StandardOpenOption.WRITE)) {
+                out.write(ByteBuffer.allocate(HEADER_BYTES));
+                for (int k = start; k < ids.size(); k += 1) {
+                    long offset = out.position();
+                    long end = offset + ENTRY_HEADER_BYTES
+                            + source.bodySize(ids.get(k));
+                    if (end > MAX_PACK_BYTES && k > start) {
+                        break;
+                    }
+                    offsets.add(offset);
+                    if (!writeDelta(out, ids.get(k), source)) {
+                        writeEntry(out, source.openBody(ids.get(k)));
+                    }
+                }
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putInt(PACK_MAGIC).putInt(VERSION)
+                        .putInt(offsets.size()).flip();
+                out.write(header, 0);
+            } catch (IOException excp) {
+                temp.delete();
+                throw excp;
+            }
+            List<String> packed = ids.subList(start, start + offsets.size());
+            result.add(install(dir, temp, packed, offsets));
+            start += offsets.size();
+        }
+        return result;
+    }
+
+    /** Writes object ID as a delta entry at the end of OUT if SOURCE gives
+     *  it a delta base and the delta is smaller than the whole object.
+     *  Returns true iff the entry was written. */
+    private static boolean writeDelta(FileChannel out, String id,
+                                      Source source) throws IOException {
+        String base = source.deltaBase(id);
+        if (base == null) {
+            return false;
+        }
+        byte[] delta = Delta.create(source.read(base), source.read(id));
+        byte[] body = source.compress(delta);
+        if (body.length >= source.bodySize(id)) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER_BYTES
+                + Utils.ID_BYTES);
+        header.put((byte) DELTA).putLong(body.length).put(Utils.fromHex(base));
+        header.flip();
+        out.write(header);
+        out.write(ByteBuffer.wrap(body));
+        return true;
+    }
+
+    /** Writes one whole-object entry whose body is read from BODY to the
+     *  end of OUT. */
+    private static void writeEntry(FileChannel out, InputStream body)
+        throws IOException {
+        long start = out.position();
+        ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER_BYTES);
+        out.write(header);
+        byte[] buffer = new byte[Utils.BUFFER_SIZE];
+        try (InputStream in = body) {
+            for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                out.write(ByteBuffer.wrap(buffer, 0, n));
+            }
+        }
+        long length = out.position() - start - ENTRY_HEADER_BYTES;
+        header.clear();
+        header.put((byte) WHOLE).putLong(length).flip();
+        out.write(header, start);
+    }
+
+    /** Writes the index of IDS at OFFSETS for the finished pack TEMP and
+     *  moves both into place in DIR.  Returns the installed pack. */
+    private static PackFile install(File dir, File temp, List<String> ids,
+                                    List<Long> offsets) throws IOException {
+        String name = "pack-" + Utils.sha1(String.join("", ids));
+        int[] fanout = new int[FANOUT_SIZE];
+        for (String id : ids) {
+            fanout[Integer.parseInt(id.substring(0, 2), 16)] += 1;
+        }
+        ByteBuffer index = ByteBuffer.allocate(HEADER_BYTES
+                + FANOUT_SIZE * 4 + ids.size() * (Utils.ID_BYTES + 8));
+        index.putInt(INDEX_MAGIC).putInt(VERSION).putInt(ids.size());
+        int total = 0;
+        for (int count : fanout) {
+            total += count;
+            index.putInt(total);
+        }
+        for (String id : ids) {
+            index.put(Utils.fromHex(id));
+        }
+        for (long offset : offsets) {
+            index.putLong(offset);
+        }
+        File packFile = new File(dir, name + ".pack");
+        File indexFile = new File(dir, name + ".idx");
+        File tempIndex = File.createTempFile("idx", null, dir);
+        Files.write(tempIndex.toPath(), index.array());
+        Files.move(temp.toPath(), packFile.toPath(),
+                StandardCopyOption.ATOMIC_MOVE);
+        Files.move(tempIndex.toPath(), indexFile.toPath(),
+                StandardCopyOption.ATOMIC_MOVE);
+        return new PackFile(indexFile);
+    }
+
+    /** An InputStream over the remaining bytes of a ByteBuffer. */
+    static class BufferInputStream extends InputStream {
+
+        /** The buffer read by this stream. */
+        private final ByteBuffer _buffer;
+
+        /** A stream over the remaining bytes of BUFFER. */
+        BufferInputStream(ByteBuffer buffer) {
+            _buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return _buffer.hasRemaining() ? _buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!_buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, _buffer.remaining());
+            _buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return _buffer.remaining();
+        }
+    }
+}
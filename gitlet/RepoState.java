@@ -0,0 +1,212 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/** The small mutable state of a repository (the current commit, the
+ *  stage, removal and branch maps and the current branch), kept as named
+ *  entries of the single file .gitlet/state.  Within one command the file
+ *  is read at most once, each entry is decoded only when first asked for,
+ *  and every method that asks for it gets the same object.  The file is
+ *  written back only if the command put a new value for some entry, and
+ *  then only once, when the command finishes; entries it did not change
+ *  are copied over as they were, without being decoded.
+ *
+ *  The new file is written to a temporary file, synced, and renamed over
+ *  the old one, after which the directory is synced: two syncs per
+ *  command that changes anything, however many entries it changed.  A
+ *  crash leaves either the old file or the new one, so all the entries
+ *  change together or not at all.
+ *
+ *  The file holds the header "GSTA", a version and the number of entries,
+ *  then for each entry its name (as in DataOutput.writeUTF), the length
+ *  of its encoding as an int and the encoding, and finally the CRC-32 of
+ *  everything before it.
+ *  @author Ashvin Dhawan
+ */
+class RepoState {
+
+    /** Name of the state file in the .gitlet directory. */
+    static final String FILE = "state";
+    /** Magic number starting every state file. */
+    static final int MAGIC = 0x47535441;
+    /** Version of the state file format written here. */
+    static final int VERSION = 1;
+
+    /** The .gitlet directory holding the state file. */
+    private final File _dir;
+    /** Map from the names of entries to their encodings as last read or
+     *  written, or null if the file has not been read in this command. */
+    private LinkedHashMap<String, byte[]> _entries;
+    /** Map from the names of entries to their values, once decoded or
+     *  put during the current command. */
+    private final HashMap<String, Object> _values =
+        new HashMap<String, Object>();
+    /** Map from the names of the entries put during the current command
+     *  to the producers of their new encodings. */
+    private final LinkedHashMap<String, Supplier<byte[]>> _dirty =
+        new LinkedHashMap<String, Supplier<byte[]>>();
+
+    /** The state kept in the repository directory DIR. */
+    RepoState(File dir) {
+        _dir = dir;
+    }
+
+    /** Returns the value of entry NAME as DECODER rebuilds it, decoding
+     *  it only on its first use in this command.  Throws
+     *  IllegalArgumentException if there is no such entry. */
+    @SuppressWarnings("unchecked")
+    <T> T get(String name, Encoding.Decoder<T> decoder) {
+        Object value = _values.get(name);
+        if (value == null) {
+            byte[] encoding = entries().get(name);
+            if (encoding == null) {
+                throw new IllegalArgumentException("no state " + name);
+            }
+            value = decoder.decode(encoding);
+            _values.put(name, value);
+        }
+        return (T) value;
+    }
+
+    /** Records VALUE as the new value of entry NAME, to be written when
+     *  the command finishes as ENCODING then produces it. */
+    void put(String name, Object value, Supplier<byte[]> encoding) {
+        _values.put(name, value);
+        _dirty.put(name, encoding);
+    }
+
+    /** Forgets every value read or put, so that the next command reads
+     *  the file afresh. */
+    void clear() {
+        _entries = null;
+        _values.clear();
+        _dirty.clear();
+    }
+
+    /** Writes the state file if any entry was put since the last save. */
+    void save() {
+        if (_dirty.isEmpty()) {
+            return;
+        }
+        LinkedHashMap<String, byte[]> entries =
+            new LinkedHashMap<String, byte[]>(entries());
+        for (Map.Entry<String, Supplier<byte[]>> entry : _dirty.entrySet()) {
+            entries.put(entry.getKey(), entry.getValue().get());
+        }
+        _dirty.clear();
+        try {
+            write(entries);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _entries = entries;
+    }
+
+    /** Returns the encodings of the entries, reading the state file on
+     *  first use.  A missing file has no entries. */
+    private Map<String, byte[]> entries() {
+        if (_entries == null) {
+            try {
+                _entries = read(new File(_dir, FILE));
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return _entries;
+    }
+
+    /** Writes ENTRIES as the new state file: to a temporary file that is
+     *  synced and renamed over the old one, and then syncs the
+     *  directory. */
+    private void write(Map<String, byte[]> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(entries.size());
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue().length);
+            out.write(entry.getValue());
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+        File temp = File.createTempFile("state", null, _dir);
+        try {
+            try (FileChannel channel = FileChannel.open(temp.toPath(),
+                    StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            Files.move(temp.toPath(), new File(_dir, FILE).toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            temp.delete();
+        }
+        sync(_dir);
+    }
+
+    /** Syncs the entries of directory DIR, so that a file renamed into it
+     *  survives a crash.  Does nothing on systems that cannot open a
+     *  directory for this. */
+    private static void sync(File dir) {
+        try (FileChannel channel = FileChannel.open(dir.toPath(),
+                StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Returns the entries of the state file FILE, mapped to their
+     *  encodings, or an empty map if there is no such file.  Throws
+     *  IOException if it is damaged. */
+    private static LinkedHashMap<String, byte[]> read(File file)
+        throws IOException {
+        LinkedHashMap<String, byte[]> result =
+            new LinkedHashMap<String, byte[]>();
+        if (!file.isFile()) {
+            return result;
+        }
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, Math.max(0, bytes.length - 4));
+        if (bytes.length < 16
+                || ByteBuffer.wrap(bytes).getInt(bytes.length - 4)
+                   != (int) crc.getValue()) {
+            throw new IOException("damaged state file " + file);
+        }
+        DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(bytes, 0, bytes.length - 4));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("unknown state file format " + file);
+        }
+        for (int n = in.readInt(); n > 0; n -= 1) {
+            String name = in.readUTF();
+            byte[] encoding = new byte[in.readInt()];
+            in.readFully(encoding);
+            result.put(name, encoding);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,190 @@
+package gitlet;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** Snapshot of one directory: the blob ids of the files directly in it
+ *  and the tree ids of its subdirectories.  A tree's id is the SHA-1 of
+ *  those entries, so equal ids mean equal directories all the way down
+ *  and two snapshots can be compared without reading any subtree whose
+ *  id is the same in both.  As in Git, the entries are hashed after the
+ *  type tag TAG, so that a tree never takes the id of a blob holding the
+ *  same text; the empty tree, in particular, is not the empty file.
+ *  @author Ashvin Dhawan
+ */
+class Tree {
+
+    /** Separator between the components of a path. */
+    static final char SEPARATOR = '/';
+    /** Type tag hashed before the entries of every tree. */
+    static final String TAG = "tree\0";
+
+    /** Map from the names of files in this directory to their blob ids. */
+    private TreeMap<String, String> _files = new TreeMap<String, String>();
+    /** Map from the names of subdirectories to their tree ids. */
+    private TreeMap<String, String> _dirs = new TreeMap<String, String>();
+    /** Cached id of this tree, computed on first use of sha(). */
+    private String _sha;
+
+    /** An empty tree, standing for a missing directory. */
+    private static final Tree EMPTY = new Tree();
+
+    /** Returns the id of this tree: the SHA-1 of TAG and its entries in
+     *  name order. */
+    String sha() {
+        if (_sha == null) {
+            StringBuilder entries = new StringBuilder();
+            for (Map.Entry<String, String> entry : _files.entrySet()) {
+                entries.append("blob ").append(entry.getValue()).append(' ')
+                    .append(entry.getKey()).append('\n');
+            }
+            for (Map.Entry<String, String> entry : _dirs.entrySet()) {
+                entries.append("tree ").append(entry.getValue()).append(' ')
+                    .append(entry.getKey()).append('\n');
+            }
+            _sha = Utils.sha1(TAG, entries.toString());
+        }
+        return _sha;
+    }
+
+    /** Returns the encoding of this tree: the number of its files, the
+     *  name and blob id of each, and then the same for its
+     *  subdirectories. */
+    byte[] encode() {
+        Encoding.Writer out = new Encoding.Writer(Encoding.TREE);
+        for (TreeMap<String, String> entries
+                 : List.of(_files, _dirs)) {
+            out.count(entries.size());
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                out.string(entry.getKey()).id(entry.getValue());
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns the tree encoded in BYTES. */
+    static Tree decode(byte[] bytes) {
+        Encoding.Reader in = new Encoding.Reader(bytes, Encoding.TREE);
+        Tree result = new Tree();
+        for (TreeMap<String, String> entries
+                 : List.of(result._files, result._dirs)) {
+            for (int n = in.size(); n > 0; n -= 1) {
+                entries.put(in.string(), in.id());
+            }
+        }
+        return result;
+    }
+
+    /** Stores in STORE the trees of the snapshot FILES, a map from
+     *  SEPARATOR-separated paths to blob ids, and returns the id of its
+     *  root.  Trees already in STORE are not written again. */
+    static String write(ObjectStore store, Map<String, String> files) {
+        Tree tree = new Tree();
+        TreeMap<String, TreeMap<String, String>> subdirs =
+            new TreeMap<String, TreeMap<String, String>>();
+        for (Map.Entry<String, String> entry : files.entrySet()) {
+            String path = entry.getKey();
+            int sep = path.indexOf(SEPARATOR);
+            if (sep < 0) {
+                tree._files.put(path, entry.getValue());
+            } else {
+                subdirs.computeIfAbsent(path.substring(0, sep),
+                    k -> new TreeMap<String, String>())
+                    .put(path.substring(sep + 1), entry.getValue());
+            }
+        }
+        for (Map.Entry<String, TreeMap<String, String>> entry
+                 : subdirs.entrySet()) {
+            tree._dirs.put(entry.getKey(), write(store, entry.getValue()));
+        }
+        String id = tree.sha();
+        if (!store.contains(id)) {
+            store.put(id, tree.encode());
+        }
+        return id;
+    }
+
+    /** Returns the tree ID from STORE, or an empty tree if ID is null. */
+    private static Tree get(ObjectStore store, String id) {
+        if (id == null) {
+            return EMPTY;
+        }
+        Tree result = store.get(id, Tree::decode);
+        if (result == null) {
+            throw new IllegalArgumentException("missing tree " + id);
+        }
+        return result;
+    }
+
+    /** Adds to INTO the path of every file under tree ID in STORE, mapped
+     *  to its blob id.  Each path begins with PREFIX. */
+    static void flatten(ObjectStore store, String id, String prefix,
+                        Map<String, String> into) {
+        Tree tree = get(store, id);
+        for (Map.Entry<String, String> entry : tree._files.entrySet()) {
+            into.put(prefix + entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, String> entry : tree._dirs.entrySet()) {
+            flatten(store, entry.getValue(),
+                    prefix + entry.getKey() + SEPARATOR, into);
+        }
+    }
+
+    /** Returns the blob id of the file at PATH in tree ID of STORE, or
+     *  null if there is none.  Only the trees along PATH are read. */
+    static String find(ObjectStore store, String id, String path) {
+        Tree tree = get(store, id);
+        int sep = path.indexOf(SEPARATOR);
+        while (sep >= 0) {
+            String dir = tree._dirs.get(path.substring(0, sep));
+            if (dir == null) {
+                return null;
+            }
+            tree = get(store, dir);
+            path = path.substring(sep + 1);
+            sep = path.indexOf(SEPARATOR);
+        }
+        return tree._files.get(path);
+    }
+
+    /** Adds to INTO the path of every file whose blob id differs between
+     *  trees FROM and TO in STORE, mapped to its id in TO, or to null if
+     *  TO lacks it.  Either tree may be null for an empty directory.
+     *  Subtrees with the same id on both sides are skipped without being
+     *  read.  Each path begins with PREFIX. */
+    static void diff(ObjectStore store, String from, String to,
+                     String prefix, Map<String, String> into) {
+        diff(store, from, to, prefix, into, null);
+    }
+
+    /** As diff(STORE, FROM, TO, PREFIX, INTO), but also adds to BEFORE,
+     *  unless it is null, each of the paths mapped to its id in FROM, or
+     *  to null if FROM lacks it. */
+    static void diff(ObjectStore store, String from, String to,
+                     String prefix, Map<String, String> into,
+                     Map<String, String> before) {
+        if (from == null ? to == null : from.equals(to)) {
+            return;
+        }
+        Tree a = get(store, from), b = get(store, to);
+        TreeSet<String> names = new TreeSet<String>(a._files.keySet());
+        names.addAll(b._files.keySet());
+        for (String name : names) {
+            String id = b._files.get(name);
+            if (id == null || !id.equals(a._files.get(name))) {
+                into.put(prefix + name, id);
+                if (before != null) {
+                    before.put(prefix + name, a._files.get(name));
+                }
+            }
+        }
+        names = new TreeSet<String>(a._dirs.keySet());
+        names.addAll(b._dirs.keySet());
+        for (String name : names) {
+            diff(store, a._dirs.get(name), b._dirs.get(name),
+                 prefix + name + SEPARATOR, into, before);
+        }
+    }
+}
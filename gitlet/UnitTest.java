@@ -2,8 +2,13 @@ package gitlet;
 
 import ucb.junit.textui;
 import org.junit.Test;
+import static org.junit.Assert.*;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 
 /** The suite of all JUnit tests for the gitlet package.
  *  @author Ashvin Dhawan
@@ -21,6 +26,132 @@ public class UnitTest {
     @Test
     public void initialTest() throws IOException {
     }
-}
 
+    /** Checks that Delta.apply rebuilds TARGET from BASE and the delta
+     *  Delta.create makes between them. */
+    private static void checkDelta(byte[] base, byte[] target) {
+        assertArrayEquals(target,
+                Delta.apply(base, Delta.create(base, target)));
+    }
+
+    /** Deltas between empty, equal and unrelated texts round-trip. */
+    @Test
+    public void deltaEdgeCases() {
+        byte[] text = "the quick brown fox jumps over the lazy dog\n"
+            .repeat(20).getBytes();
+        checkDelta(new byte[0], new byte[0]);
+        checkDelta(new byte[0], text);
+        checkDelta(text, new byte[0]);
+        checkDelta(text, text);
+        checkDelta(text, "something else entirely".getBytes());
+    }
+
+    /** Deltas between random texts and edited copies of them round-trip,
+     *  including inserts longer than one insert instruction holds. */
+    @Test
+    public void deltaRoundTrip() {
+        Random random = new Random(61);
+        for (int trial = 0; trial < 200; trial += 1) {
+            byte[] base = new byte[random.nextInt(5000)];
+            random.nextBytes(base);
+            byte[] target = base;
+            for (int edit = random.nextInt(6); edit > 0; edit -= 1) {
+                int at = random.nextInt(target.length + 1);
+                int cut = random.nextInt(target.length - at + 1);
+                byte[] insert = new byte[random.nextInt(300)];
+                random.nextBytes(insert);
+                byte[] next = new byte[target.length - cut + insert.length];
+                System.arraycopy(target, 0, next, 0, at);
+                System.arraycopy(insert, 0, next, at, insert.length);
+                System.arraycopy(target, at + cut, next, at + insert.length,
+                                 target.length - at - cut);
+                target = next;
+            }
+            checkDelta(base, target);
+        }
+    }
+
+    /** A delta from a text to a lightly edited copy is much smaller than
+     *  the copy. */
+    @Test
+    public void deltaIsSmall() {
+        byte[] base = new byte[100000];
+        new Random(7).nextBytes(base);
+        byte[] target = Arrays.copyOf(base, base.length + 10);
+        target[50000] += 1;
+        assertTrue(Delta.create(base, target).length < 1000);
+        checkDelta(base, target);
+    }
 
+    /** Returns a random text of up to MAXLINES lines drawn from an
+     *  alphabet of ALPHABET lines, using RANDOM. */
+    private static List<String> randomLines(Random random, int maxLines,
+                                            int alphabet) {
+        ArrayList<String> result = new ArrayList<String>();
+        for (int n = random.nextInt(maxLines + 1); n > 0; n -= 1) {
+            result.add("line " + random.nextInt(alphabet) + "\n");
+        }
+        return result;
+    }
+
+    /** Returns the length of a longest common subsequence of A and B,
+     *  found by the textbook dynamic program. */
+    private static int lcsLength(List<String> a, List<String> b) {
+        int[][] len = new int[a.size() + 1][b.size() + 1];
+        for (int i = a.size() - 1; i >= 0; i -= 1) {
+            for (int j = b.size() - 1; j >= 0; j -= 1) {
+                len[i][j] = a.get(i).equals(b.get(j)) ? len[i + 1][j + 1] + 1
+                    : Math.max(len[i + 1][j], len[i][j + 1]);
+            }
+        }
+        return len[0][0];
+    }
+
+    /** Diff.match pairs equal lines in increasing order on both sides,
+     *  and pairs as many lines as a longest common subsequence has. */
+    @Test
+    public void diffMatchesLongestCommonSubsequence() {
+        Random random = new Random(22);
+        for (int trial = 0; trial < 500; trial += 1) {
+            int alphabet = 1 + random.nextInt(8);
+            List<String> a = randomLines(random, 40, alphabet),
+                b = randomLines(random, 40, alphabet);
+            int[] match = Diff.match(a, b);
+            assertEquals(a.size(), match.length);
+            int matched = 0, last = -1;
+            for (int i = 0; i < match.length; i += 1) {
+                if (match[i] != Diff.NONE) {
+                    assertTrue(match[i] > last);
+                    assertEquals(a.get(i), b.get(match[i]));
+                    last = match[i];
+                    matched += 1;
+                }
+            }
+            assertEquals(lcsLength(a, b), matched);
+        }
+    }
+
+    /** Checks that merging OURS and THEIRS from BASE gives EXPECTED with
+     *  no conflicts. */
+    private static void checkCleanMerge(String base, String ours,
+                                        String theirs, String expected) {
+        LineMerge merge = new LineMerge(base, ours, theirs);
+        assertEquals(0, merge.conflicts());
+        assertEquals(expected, merge.text());
+    }
+
+    /** Unchanged texts, changes on one side only and identical changes on
+     *  both sides merge without conflicts. */
+    @Test
+    public void lineMergeIdentities() {
+        Random random = new Random(23);
+        for (int trial = 0; trial < 200; trial += 1) {
+            String base = String.join("", randomLines(random, 30, 6)),
+                edited = String.join("", randomLines(random, 30, 6));
+            checkCleanMerge(base, base, base, base);
+            checkCleanMerge(base, edited, base, edited);
+            checkCleanMerge(base, base, edited, edited);
+            checkCleanMerge(base, edited, edited, edited);
+        }
+    }
+}
@@ -9,13 +9,14 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
 
 
@@ -28,6 +29,11 @@ class Utils {
 
     /** The length of a complete SHA-1 UID as a hexadecimal numeral. */
     static final int UID_LENGTH = 40;
+    /** The length of a complete SHA-1 UID in bytes. */
+    static final int ID_BYTES = UID_LENGTH / 2;
+
+    /** Size of the buffer used when streaming file contents. */
+    static final int BUFFER_SIZE = 1 << 16;
 
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
@@ -43,16 +49,56 @@ class Utils {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+            return toHex(md.digest());
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** Returns the SHA-1 hash of the contents of FILE, which must be a
+     *  normal file.  The file is read in BUFFER_SIZE chunks, so it is never
+     *  held in memory as a whole.  Throws IllegalArgumentException in case
+     *  of problems. */
+    static String sha1(File file) {
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        try (FileChannel in = FileChannel.open(file.toPath())) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                md.update(buffer);
+                buffer.clear();
             }
-            return result.toString();
+            return toHex(md.digest());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
     }
 
+    /** Returns BYTES as a lower-case hexadecimal numeral. */
+    static String toHex(byte[] bytes) {
+        StringBuilder result = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes) {
+            result.append(Character.forDigit((b >> 4) & 0xf, 16));
+            result.append(Character.forDigit(b & 0xf, 16));
+        }
+        return result.toString();
+    }
+
+    /** Returns the ID_BYTES bytes denoted by the hexadecimal numeral ID. */
+    static byte[] fromHex(String id) {
+        byte[] result = new byte[ID_BYTES];
+        for (int i = 0; i < ID_BYTES; i += 1) {
+            result[i] = (byte) (Character.digit(id.charAt(2 * i), 16) << 4
+                                | Character.digit(id.charAt(2 * i + 1), 16));
+        }
+        return result;
+    }
+
     /** Returns the SHA-1 hash of the concatenation of the strings in
      *  VALS. */
     static String sha1(List<Object> vals) {
@@ -0,0 +1,130 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/** Parallel access to the working directory.  Listing, stat calls and
+ *  hashing of working files run on a shared fork-join pool whose size is
+ *  set by the gitlet.threads system property (by default, the number of
+ *  available processors).  Results always come back in a fixed order, so
+ *  output does not depend on scheduling.
+ *  @author Ashvin Dhawan
+ */
+class WorkTree {
+
+    /** Name of the system property giving the number of worker threads. */
+    static final String THREADS_PROPERTY = "gitlet.threads";
+
+    /** Pool on which working-directory tasks run, created on first use. */
+    private static ForkJoinPool _pool;
+
+    /** Returns the pool on which working-directory tasks run. */
+    static synchronized ForkJoinPool pool() {
+        if (_pool == null) {
+            int threads = Integer.getInteger(THREADS_PROPERTY,
+                    Runtime.getRuntime().availableProcessors());
+            _pool = new ForkJoinPool(Math.max(1, threads));
+        }
+        return _pool;
+    }
+
+    /** Returns the results of applying FUNC to every element of ITEMS,
+     *  computed in parallel but listed in the order of ITEMS. */
+    static <T, R> List<R> map(List<T> items, Function<T, R> func) {
+        if (items.size() <= 1 || pool().getParallelism() == 1) {
+            ArrayList<R> result = new ArrayList<R>(items.size());
+            for (T item : items) {
+                result.add(func.apply(item));
+            }
+            return result;
+        }
+        return pool().submit(() -> items.parallelStream().map(func)
+                .collect(Collectors.toList())).join();
+    }
+
+    /** Returns the paths, relative to ROOT and separated by
+     *  Tree.SEPARATOR, of all plain files under directory ROOT outside its
+     *  .gitlet directory, in lexicographic order as Java Strings.  The
+     *  tree is walked one level at a time, listing the directories and
+     *  checking the entries of each level in parallel.  Symbolic links to
+     *  directories are not followed. */
+    static List<String> filesIn(File root) {
+        ArrayList<String> result = new ArrayList<String>();
+        List<String> dirs = Collections.singletonList("");
+        while (!dirs.isEmpty()) {
+            ArrayList<String> entries = new ArrayList<String>();
+            for (List<String> listing : map(dirs, dir -> list(root, dir))) {
+                entries.addAll(listing);
+            }
+            List<Boolean> isDir = map(entries, path -> kind(root, path));
+            ArrayList<String> next = new ArrayList<String>();
+            for (int i = 0; i < entries.size(); i += 1) {
+                if (isDir.get(i) == null) {
+                    continue;
+                } else if (isDir.get(i)) {
+                    next.add(entries.get(i) + Tree.SEPARATOR);
+                } else {
+                    result.add(entries.get(i));
+                }
+            }
+            dirs = next;
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Returns the paths of the entries of directory DIR under ROOT, where
+     *  DIR is empty or a path ending in Tree.SEPARATOR.  The .gitlet
+     *  directory of ROOT is left out. */
+    private static List<String> list(File root, String dir) {
+        String[] names = new File(root, dir).list();
+        ArrayList<String> result = new ArrayList<String>();
+        if (names != null) {
+            for (String name : names) {
+                if (!dir.isEmpty() || !name.equals(".gitlet")) {
+                    result.add(dir + name);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns true if PATH under ROOT is a directory, false if it is a
+     *  plain file, and null if it is neither. */
+    private static Boolean kind(File root, String path) {
+        File file = new File(root, path);
+        if (Files.isDirectory(file.toPath(), LinkOption.NOFOLLOW_LINKS)) {
+            return true;
+        } else if (file.isFile()) {
+            return false;
+        }
+        return null;
+    }
+
+    /** Deletes working file PATH under ROOT, together with any directories
+     *  that this leaves empty, up to but not including ROOT.  Refuses to
+     *  delete anything and throws IllegalArgumentException unless ROOT
+     *  contains a .gitlet directory.  Returns true iff PATH was deleted. */
+    static boolean delete(File root, String path) {
+        if (!new File(root, ".gitlet").isDirectory()) {
+            throw new IllegalArgumentException("not .gitlet working directory");
+        }
+        File file = new File(root, path);
+        if (file.isDirectory() || !file.delete()) {
+            return false;
+        }
+        for (File dir = file.getParentFile();
+             dir != null && !dir.equals(root) && dir.delete();
+             dir = dir.getParentFile()) {
+            continue;
+        }
+        return true;
+    }
+}